@@ -1,13 +1,23 @@
 package ru.vvdev.yamap;
 
+import android.view.View;
+
 import androidx.annotation.NonNull;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.facebook.react.uimanager.IllegalViewOperationException;
+import com.facebook.react.uimanager.NativeViewHierarchyManager;
+import com.facebook.react.uimanager.UIBlock;
+import com.facebook.react.uimanager.UIManagerModule;
 import com.yandex.mapkit.MapKitFactory;
 import com.yandex.mapkit.transport.TransportFactory;
 import com.yandex.runtime.i18n.I18nManagerFactory;
@@ -18,6 +28,10 @@ import java.util.Map;
 
 import javax.annotation.Nullable;
 
+import ru.vvdev.yamap.utils.ImageLoader;
+import ru.vvdev.yamap.utils.UpdateStats;
+import ru.vvdev.yamap.view.YamapView;
+
 import static com.facebook.react.bridge.UiThreadUtil.runOnUiThread;
 
 public class RNYamapModule extends ReactContextBaseJavaModule {
@@ -94,6 +108,117 @@ public class RNYamapModule extends ReactContextBaseJavaModule {
         }));
     }
 
+    @ReactMethod
+    public void setMaxConcurrentImageLoads(int count) {
+        ImageLoader.setMaxConcurrentLoads(count);
+    }
+
+    // how many MapKit calls the map objects made and skipped for unchanged props
+    @ReactMethod
+    public void getUpdateStats(final Callback successCb, final Callback errorCb) {
+        runOnUiThread(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WritableMap stats = Arguments.createMap();
+                stats.putDouble("applied", UpdateStats.getApplied());
+                stats.putDouble("propsSkipped", UpdateStats.getPropsSkipped());
+                stats.putDouble("geometrySkipped", UpdateStats.getGeometrySkipped());
+                successCb.invoke(stats);
+            }
+        }));
+    }
+
+    @ReactMethod
+    public void resetUpdateStats() {
+        runOnUiThread(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                UpdateStats.reset();
+            }
+        }));
+    }
+
+    // map queries resolved directly, without a command and a reply event
+    @ReactMethod
+    public void getCameraPosition(final int viewTag, final Promise promise) {
+        withMapView(viewTag, promise, new MapViewBlock() {
+            @Override
+            public void run(YamapView view) {
+                promise.resolve(view.getCameraPositionJSON());
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getVisibleRegion(final int viewTag, final Promise promise) {
+        withMapView(viewTag, promise, new MapViewBlock() {
+            @Override
+            public void run(YamapView view) {
+                promise.resolve(view.getVisibleRegionJSON());
+            }
+        });
+    }
+
+    // several queries against the same camera state, resolved with one result per query
+    @ReactMethod
+    public void query(final int viewTag, final ReadableArray queries, final Promise promise) {
+        withMapView(viewTag, promise, new MapViewBlock() {
+            @Override
+            public void run(YamapView view) {
+                WritableArray results = Arguments.createArray();
+                for (int i = 0; i < queries.size(); ++i) {
+                    String query = queries.getString(i);
+                    switch (query) {
+                        case "cameraPosition":
+                            results.pushMap(view.getCameraPositionJSON());
+                            break;
+                        case "visibleRegion":
+                            results.pushMap(view.getVisibleRegionJSON());
+                            break;
+                        case "featuresInVisibleRegion":
+                            results.pushArray(view.getFeaturesInBoundsJSON(view.getVisibleBounds()));
+                            break;
+                        default:
+                            promise.reject("E_UNKNOWN_QUERY", "Unsupported query " + query);
+                            return;
+                    }
+                }
+                promise.resolve(results);
+            }
+        });
+    }
+
+    private interface MapViewBlock {
+        void run(YamapView view);
+    }
+
+    // runs on the UI thread after the pending UI operations, so commands sent before
+    // the query are already applied
+    private void withMapView(final int viewTag, final Promise promise, final MapViewBlock block) {
+        UIManagerModule uiManager = getContext().getNativeModule(UIManagerModule.class);
+        if (uiManager == null) {
+            promise.reject("E_NO_UI_MANAGER", "UIManagerModule is not available");
+            return;
+        }
+        uiManager.addUIBlock(new UIBlock() {
+            @Override
+            public void execute(NativeViewHierarchyManager nativeViewHierarchyManager) {
+                View view;
+                try {
+                    view = nativeViewHierarchyManager.resolveView(viewTag);
+                } catch (IllegalViewOperationException e) {
+                    promise.reject("E_NO_VIEW", e);
+                    return;
+                }
+                if (!(view instanceof YamapView)) {
+                    promise.reject("E_NO_VIEW", "View " + viewTag + " is not a YamapView");
+                    return;
+                }
+                block.run((YamapView) view);
+            }
+        });
+    }
+
     private static void emitDeviceEvent(String eventName, @Nullable WritableMap eventData) {
         reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, eventData);
     }
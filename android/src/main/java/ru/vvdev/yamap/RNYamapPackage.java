@@ -27,7 +27,8 @@ public class RNYamapPackage implements ReactPackage {
                 new YamapPolygonManager(),
                 new YamapPolylineManager(),
                 new YamapMarkerManager(),
-                new YamapCircleManager()
+                new YamapCircleManager(),
+                new YamapMarkerCollectionManager()
         );
     }
 }
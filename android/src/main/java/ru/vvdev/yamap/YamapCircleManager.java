@@ -41,6 +41,12 @@ public class YamapCircleManager extends ViewGroupManager<YamapCircle> {
         return new YamapCircle(context);
     }
 
+    @Override
+    protected void onAfterUpdateTransaction(@Nonnull YamapCircle view) {
+        super.onAfterUpdateTransaction(view);
+        view.updateCircle();
+    }
+
     // props
     @ReactProp(name = "center")
     public void setCenter(YamapCircle view, ReadableMap center) {
@@ -74,4 +80,14 @@ public class YamapCircleManager extends ViewGroupManager<YamapCircle> {
     public void setZIndex(YamapCircle view, int zIndex) {
         view.setZIndex(zIndex);
     }
+
+    @ReactProp(name = "minZoom")
+    public void setMinZoom(YamapCircle view, float minZoom) {
+        view.setMinZoom(minZoom);
+    }
+
+    @ReactProp(name = "maxZoom", defaultFloat = Float.MAX_VALUE)
+    public void setMaxZoom(YamapCircle view, float maxZoom) {
+        view.setMaxZoom(maxZoom);
+    }
 }
@@ -0,0 +1,110 @@
+package ru.vvdev.yamap;
+
+import android.graphics.PointF;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.common.MapBuilder;
+import com.facebook.react.uimanager.ThemedReactContext;
+import com.facebook.react.uimanager.ViewGroupManager;
+import com.facebook.react.uimanager.annotations.ReactProp;
+
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import ru.vvdev.yamap.utils.PackedCoordinates;
+import ru.vvdev.yamap.view.YamapMarkerCollection;
+
+public class YamapMarkerCollectionManager extends ViewGroupManager<YamapMarkerCollection> {
+    public static final String REACT_CLASS = "YamapMarkerCollection";
+
+    YamapMarkerCollectionManager() { }
+
+    @Override
+    public String getName() {
+        return REACT_CLASS;
+    }
+
+    @Override
+    public Map<String, Object> getExportedCustomDirectEventTypeConstants() {
+        return MapBuilder.<String, Object>builder()
+                .put("onItemPress", MapBuilder.of("registrationName", "onItemPress"))
+                .build();
+    }
+
+    public Map getExportedCustomBubblingEventTypeConstants() {
+        return MapBuilder.builder()
+                .build();
+    }
+
+    @Nonnull
+    @Override
+    public YamapMarkerCollection createViewInstance(@Nonnull ThemedReactContext context) {
+        return new YamapMarkerCollection(context);
+    }
+
+    @Override
+    protected void onAfterUpdateTransaction(@Nonnull YamapMarkerCollection view) {
+        super.onAfterUpdateTransaction(view);
+        view.updateCollection();
+    }
+
+    // props
+    @ReactProp(name = "coordinates")
+    public void setCoordinates(YamapMarkerCollection view, ReadableArray coordinates) {
+        view.setCoordinates(PackedCoordinates.fromArray(coordinates));
+    }
+
+    @ReactProp(name = "ids")
+    public void setIds(YamapMarkerCollection view, ReadableArray ids) {
+        String[] parsed = new String[ids != null ? ids.size() : 0];
+        for (int i = 0; i < parsed.length; ++i) {
+            parsed[i] = ids.getString(i);
+        }
+        view.setIds(parsed);
+    }
+
+    @ReactProp(name = "iconIndices")
+    public void setIconIndices(YamapMarkerCollection view, ReadableArray indices) {
+        int[] parsed = new int[indices != null ? indices.size() : 0];
+        for (int i = 0; i < parsed.length; ++i) {
+            parsed[i] = indices.getInt(i);
+        }
+        view.setIconIndices(parsed);
+    }
+
+    @ReactProp(name = "icons")
+    public void setIcons(YamapMarkerCollection view, ReadableArray icons) {
+        String[] parsed = new String[icons != null ? icons.size() : 0];
+        for (int i = 0; i < parsed.length; ++i) {
+            parsed[i] = icons.getString(i);
+        }
+        view.setIcons(parsed);
+    }
+
+    @ReactProp(name = "zIndex")
+    public void setZIndex(YamapMarkerCollection view, int zIndex) {
+        view.setZIndex(zIndex);
+    }
+
+    @ReactProp(name = "minZoom")
+    public void setMinZoom(YamapMarkerCollection view, float minZoom) {
+        view.setMinZoom(minZoom);
+    }
+
+    @ReactProp(name = "maxZoom", defaultFloat = Float.MAX_VALUE)
+    public void setMaxZoom(YamapMarkerCollection view, float maxZoom) {
+        view.setMaxZoom(maxZoom);
+    }
+
+    @ReactProp(name = "scale", defaultFloat = 1.f)
+    public void setScale(YamapMarkerCollection view, float scale) {
+        view.setScale(scale);
+    }
+
+    @ReactProp(name = "anchor")
+    public void setAnchor(YamapMarkerCollection view, ReadableMap anchor) {
+        view.setAnchor(anchor != null ? new PointF((float) anchor.getDouble("x"), (float) anchor.getDouble("y")) : null);
+    }
+}
@@ -1,8 +1,13 @@
 package ru.vvdev.yamap;
 
+import android.graphics.Bitmap;
 import android.graphics.PointF;
 import android.view.View;
 
+import androidx.annotation.NonNull;
+
+import com.facebook.infer.annotation.Assertions;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.common.MapBuilder;
 import com.facebook.react.uimanager.ThemedReactContext;
@@ -13,12 +18,15 @@ import com.yandex.mapkit.geometry.Point;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import ru.vvdev.yamap.view.YamapMarker;
 
 public class YamapMarkerManager extends ViewGroupManager<YamapMarker> {
     public static final String REACT_CLASS = "YamapMarker";
 
+    private static final int ANIMATE_TO = 1;
+
     YamapMarkerManager() {}
 
     @Override
@@ -38,6 +46,37 @@ public class YamapMarkerManager extends ViewGroupManager<YamapMarker> {
                 .build();
     }
 
+    @Override
+    public Map<String, Integer> getCommandsMap() {
+        return MapBuilder.of(
+                "animateTo",
+                ANIMATE_TO);
+    }
+
+    @Override
+    public void receiveCommand(
+            @NonNull YamapMarker view,
+            String commandType,
+            @Nullable ReadableArray args) {
+        Assertions.assertNotNull(view);
+        Assertions.assertNotNull(args);
+        switch (commandType) {
+            case "animateTo":
+                if (args != null) {
+                    ReadableMap target = args.getMap(0);
+                    Point point = new Point(target.getDouble("lat"), target.getDouble("lon"));
+                    Double heading = args.isNull(3) ? null : args.getDouble(3);
+                    view.animateTo(point, args.getInt(1), args.getString(2), heading);
+                }
+                return;
+            default:
+                throw new IllegalArgumentException(String.format(
+                        "Unsupported command %s received by %s.",
+                        commandType,
+                        getClass().getSimpleName()));
+        }
+    }
+
     private YamapMarker castToMarkerView(View view) {
         return (YamapMarker) view;
     }
@@ -48,6 +87,19 @@ public class YamapMarkerManager extends ViewGroupManager<YamapMarker> {
         return new YamapMarker(context);
     }
 
+    @Override
+    protected void onAfterUpdateTransaction(@Nonnull YamapMarker view) {
+        super.onAfterUpdateTransaction(view);
+        view.updateMarker();
+    }
+
+    // the map looks markers up by nativeID for batched position updates
+    @Override
+    public void setNativeId(@NonNull YamapMarker view, @Nullable String nativeId) {
+        super.setNativeId(view, nativeId);
+        view.onNativeIdChanged();
+    }
+
     // props
     @ReactProp(name = "point")
     public void setPoint(View view, ReadableMap markerPoint) {
@@ -64,6 +116,16 @@ public class YamapMarkerManager extends ViewGroupManager<YamapMarker> {
         castToMarkerView(view).setZIndex(zIndex);
     }
 
+    @ReactProp(name = "minZoom")
+    public void setMinZoom(View view, float minZoom) {
+        castToMarkerView(view).setMinZoom(minZoom);
+    }
+
+    @ReactProp(name = "maxZoom", defaultFloat = Float.MAX_VALUE)
+    public void setMaxZoom(View view, float maxZoom) {
+        castToMarkerView(view).setMaxZoom(maxZoom);
+    }
+
     @ReactProp(name = "scale")
     public void setScale(View view, float scale) {
         castToMarkerView(view).setScale(scale);
@@ -76,6 +138,18 @@ public class YamapMarkerManager extends ViewGroupManager<YamapMarker> {
         }
     }
 
+    @ReactProp(name = "iconSize")
+    public void setIconSize(View view, ReadableMap size) {
+        int width = size != null && size.hasKey("width") ? size.getInt("width") : 0;
+        int height = size != null && size.hasKey("height") ? size.getInt("height") : 0;
+        castToMarkerView(view).setIconSize(width, height);
+    }
+
+    @ReactProp(name = "iconBitmapConfig")
+    public void setIconBitmapConfig(View view, String config) {
+        castToMarkerView(view).setIconConfig("RGB_565".equals(config) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+    }
+
     @ReactProp(name = "anchor")
     public void setAnchor(View view, ReadableMap anchor) {
         castToMarkerView(view).setAnchor(anchor != null ? new PointF((float) anchor.getDouble("x"), (float) anchor.getDouble("y")) : null);
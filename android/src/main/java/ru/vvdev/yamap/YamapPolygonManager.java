@@ -3,7 +3,6 @@ package ru.vvdev.yamap;
 import android.view.View;
 
 import com.facebook.react.bridge.ReadableArray;
-import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.common.MapBuilder;
 import com.facebook.react.uimanager.ThemedReactContext;
 import com.facebook.react.uimanager.ViewGroupManager;
@@ -15,6 +14,8 @@ import java.util.Map;
 
 import javax.annotation.Nonnull;
 
+import ru.vvdev.yamap.utils.GeometryWorker;
+import ru.vvdev.yamap.utils.PackedCoordinates;
 import ru.vvdev.yamap.view.YamapPolygon;
 
 public class YamapPolygonManager extends ViewGroupManager<YamapPolygon> {
@@ -49,46 +50,99 @@ public class YamapPolygonManager extends ViewGroupManager<YamapPolygon> {
         return new YamapPolygon(context);
     }
 
+    @Override
+    protected void onAfterUpdateTransaction(@Nonnull YamapPolygon view) {
+        super.onAfterUpdateTransaction(view);
+        view.updatePolygon();
+    }
+
     // props
     @ReactProp(name = "points")
-    public void setPoints(View view, ReadableArray points) {
-        if (points != null) {
-            ArrayList<Point> parsed = new ArrayList<>();
-            for (int i = 0; i < points.size(); ++i) {
-                ReadableMap markerMap = points.getMap(i);
-                if (markerMap != null) {
-                    double lon = markerMap.getDouble("lon");
-                    double lat = markerMap.getDouble("lat");
-                    Point point = new Point(lat, lon);
-                    parsed.add(point);
-                }
-            }
-            castToPolygonView(view).setPolygonPoints(parsed);
+    public void setPoints(View view, final ReadableArray points) {
+        if (points == null) {
+            return;
+        }
+        if (points.size() < GeometryWorker.MIN_ASYNC_SIZE) {
+            castToPolygonView(view).setPolygonPoints(parsePoints(points));
+            return;
         }
+        castToPolygonView(view).loadPolygonPoints(new GeometryWorker.Task<ArrayList<Point>>() {
+            @Override
+            public ArrayList<Point> run() {
+                return parsePoints(points);
+            }
+        });
     }
 
     @ReactProp(name = "innerRings")
-    public void setInnerRings(View view, ReadableArray _rings) {
+    public void setInnerRings(View view, final ReadableArray _rings) {
+        int count = 0;
+        for (int j = 0; _rings != null && j < _rings.size(); ++j) {
+            ReadableArray points = _rings.getArray(j);
+            count += points != null ? points.size() : 0;
+        }
+        if (count < GeometryWorker.MIN_ASYNC_SIZE) {
+            castToPolygonView(view).setInnerRings(parseRings(_rings));
+            return;
+        }
+        castToPolygonView(view).loadInnerRings(new GeometryWorker.Task<ArrayList<ArrayList<Point>>>() {
+            @Override
+            public ArrayList<ArrayList<Point>> run() {
+                return parseRings(_rings);
+            }
+        });
+    }
+
+    private static ArrayList<Point> parsePoints(ReadableArray points) {
+        return PackedCoordinates.toPoints(PackedCoordinates.fromPointMaps(points));
+    }
+
+    private static ArrayList<ArrayList<Point>> parseRings(ReadableArray _rings) {
         ArrayList<ArrayList<Point>> rings = new ArrayList<>();
         if (_rings != null) {
             for (int j = 0; j < _rings.size(); ++j) {
                 ReadableArray points = _rings.getArray(j);
                 if (points != null) {
-                    ArrayList<Point> parsed = new ArrayList<>();
-                    for (int i = 0; i < points.size(); ++i) {
-                        ReadableMap markerMap = points.getMap(i);
-                        if (markerMap != null) {
-                            double lon = markerMap.getDouble("lon");
-                            double lat = markerMap.getDouble("lat");
-                            Point point = new Point(lat, lon);
-                            parsed.add(point);
-                        }
-                    }
-                    rings.add(parsed);
+                    rings.add(parsePoints(points));
                 }
             }
         }
-        castToPolygonView(view).setInnerRings(rings);
+        return rings;
+    }
+
+    // flat [lat0, lon0, lat1, lon1, ...], an alternative to points for large geometries
+    @ReactProp(name = "coordinates")
+    public void setCoordinates(View view, final ReadableArray coordinates) {
+        if (coordinates == null) {
+            return;
+        }
+        if (coordinates.size() < GeometryWorker.MIN_ASYNC_SIZE) {
+            castToPolygonView(view).setPolygonPoints(PackedCoordinates.toPoints(PackedCoordinates.fromArray(coordinates)));
+            return;
+        }
+        castToPolygonView(view).loadPolygonPoints(new GeometryWorker.Task<ArrayList<Point>>() {
+            @Override
+            public ArrayList<Point> run() {
+                return PackedCoordinates.toPoints(PackedCoordinates.fromArray(coordinates));
+            }
+        });
+    }
+
+    @ReactProp(name = "encodedPoints")
+    public void setEncodedPoints(View view, final String encoded) {
+        if (encoded == null) {
+            return;
+        }
+        if (encoded.length() < GeometryWorker.MIN_ASYNC_SIZE) {
+            castToPolygonView(view).setPolygonPoints(PackedCoordinates.toPoints(PackedCoordinates.decode(encoded, 5)));
+            return;
+        }
+        castToPolygonView(view).loadPolygonPoints(new GeometryWorker.Task<ArrayList<Point>>() {
+            @Override
+            public ArrayList<Point> run() {
+                return PackedCoordinates.toPoints(PackedCoordinates.decode(encoded, 5));
+            }
+        });
     }
 
     @ReactProp(name = "strokeWidth")
@@ -108,4 +162,14 @@ public class YamapPolygonManager extends ViewGroupManager<YamapPolygon> {
     public void setZIndex(View view, int zIndex) {
         castToPolygonView(view).setZIndex(zIndex);
     }
+
+    @ReactProp(name = "minZoom")
+    public void setMinZoom(View view, float minZoom) {
+        castToPolygonView(view).setMinZoom(minZoom);
+    }
+
+    @ReactProp(name = "maxZoom", defaultFloat = Float.MAX_VALUE)
+    public void setMaxZoom(View view, float maxZoom) {
+        castToPolygonView(view).setMaxZoom(maxZoom);
+    }
 }
@@ -1,25 +1,36 @@
 package ru.vvdev.yamap;
 
+import android.graphics.Color;
 import android.view.View;
 
+import androidx.annotation.NonNull;
+
+import com.facebook.infer.annotation.Assertions;
 import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.common.MapBuilder;
 import com.facebook.react.uimanager.ThemedReactContext;
 import com.facebook.react.uimanager.ViewGroupManager;
 import com.facebook.react.uimanager.annotations.ReactProp;
-import com.yandex.mapkit.geometry.Point;
 
-import java.util.ArrayList;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import ru.vvdev.yamap.utils.GeometryWorker;
+import ru.vvdev.yamap.utils.PackedCoordinates;
 import ru.vvdev.yamap.view.YamapPolyline;
 
 public class YamapPolylineManager extends ViewGroupManager<YamapPolyline> {
     public static final String REACT_CLASS = "YamapPolyline";
 
+    private static final int APPEND_POINTS = 1;
+    private static final int TRIM_POINTS = 2;
+    private static final int SET_PROGRESS_POSITION = 3;
+    private static final int SET_PROGRESS_DISTANCE = 4;
+    private static final int CLEAR_PROGRESS = 5;
+
     YamapPolylineManager() {
     }
 
@@ -40,6 +51,61 @@ public class YamapPolylineManager extends ViewGroupManager<YamapPolyline> {
                 .build();
     }
 
+    @Override
+    public Map<String, Integer> getCommandsMap() {
+        return MapBuilder.of(
+                "appendPoints",
+                APPEND_POINTS,
+                "trimPoints",
+                TRIM_POINTS,
+                "setProgressPosition",
+                SET_PROGRESS_POSITION,
+                "setProgressDistance",
+                SET_PROGRESS_DISTANCE,
+                "clearProgress",
+                CLEAR_PROGRESS);
+    }
+
+    @Override
+    public void receiveCommand(
+            @NonNull YamapPolyline view,
+            String commandType,
+            @Nullable ReadableArray args) {
+        Assertions.assertNotNull(view);
+        Assertions.assertNotNull(args);
+        switch (commandType) {
+            case "appendPoints":
+                if (args != null) {
+                    view.appendPoints(PackedCoordinates.fromArray(args.getArray(0)), args.getInt(1));
+                }
+                return;
+            case "trimPoints":
+                if (args != null) {
+                    view.trimPoints(args.getInt(0));
+                }
+                return;
+            case "setProgressPosition":
+                if (args != null) {
+                    ReadableMap point = args.getMap(0);
+                    view.setProgressPosition(point.getDouble("lat"), point.getDouble("lon"));
+                }
+                return;
+            case "setProgressDistance":
+                if (args != null) {
+                    view.setProgressDistance(args.getDouble(0));
+                }
+                return;
+            case "clearProgress":
+                view.clearProgress();
+                return;
+            default:
+                throw new IllegalArgumentException(String.format(
+                        "Unsupported command %s received by %s.",
+                        commandType,
+                        getClass().getSimpleName()));
+        }
+    }
+
     private YamapPolyline castToPolylineView(View view) {
         return (YamapPolyline) view;
     }
@@ -50,22 +116,63 @@ public class YamapPolylineManager extends ViewGroupManager<YamapPolyline> {
         return new YamapPolyline(context);
     }
 
+    @Override
+    protected void onAfterUpdateTransaction(@Nonnull YamapPolyline view) {
+        super.onAfterUpdateTransaction(view);
+        view.updatePolyline();
+    }
+
     // props
     @ReactProp(name = "points")
-    public void setPoints(View view, ReadableArray points) {
-        if (points != null) {
-            ArrayList<Point> parsed = new ArrayList<>();
-            for (int i = 0; i < points.size(); ++i) {
-                ReadableMap markerMap = points.getMap(i);
-                if (markerMap != null) {
-                    double lon = markerMap.getDouble("lon");
-                    double lat = markerMap.getDouble("lat");
-                    Point point = new Point(lat, lon);
-                    parsed.add(point);
-                }
+    public void setPoints(View view, final ReadableArray points) {
+        if (points == null) {
+            return;
+        }
+        if (points.size() < GeometryWorker.MIN_ASYNC_SIZE) {
+            castToPolylineView(view).setCoordinates(PackedCoordinates.fromPointMaps(points));
+            return;
+        }
+        castToPolylineView(view).loadCoordinates(new GeometryWorker.Task<double[]>() {
+            @Override
+            public double[] run() {
+                return PackedCoordinates.fromPointMaps(points);
             }
-            castToPolylineView(view).setPolygonPoints(parsed);
+        });
+    }
+
+    // flat [lat0, lon0, lat1, lon1, ...], an alternative to points for large geometries
+    @ReactProp(name = "coordinates")
+    public void setCoordinates(View view, final ReadableArray coordinates) {
+        if (coordinates == null) {
+            return;
+        }
+        if (coordinates.size() < GeometryWorker.MIN_ASYNC_SIZE) {
+            castToPolylineView(view).setCoordinates(PackedCoordinates.fromArray(coordinates));
+            return;
+        }
+        castToPolylineView(view).loadCoordinates(new GeometryWorker.Task<double[]>() {
+            @Override
+            public double[] run() {
+                return PackedCoordinates.fromArray(coordinates);
+            }
+        });
+    }
+
+    @ReactProp(name = "encodedPoints")
+    public void setEncodedPoints(View view, final String encoded) {
+        if (encoded == null) {
+            return;
+        }
+        if (encoded.length() < GeometryWorker.MIN_ASYNC_SIZE) {
+            castToPolylineView(view).setCoordinates(PackedCoordinates.decode(encoded, 5));
+            return;
         }
+        castToPolylineView(view).loadCoordinates(new GeometryWorker.Task<double[]>() {
+            @Override
+            public double[] run() {
+                return PackedCoordinates.decode(encoded, 5);
+            }
+        });
     }
 
     @ReactProp(name = "strokeWidth")
@@ -73,16 +180,36 @@ public class YamapPolylineManager extends ViewGroupManager<YamapPolyline> {
         castToPolylineView(view).setStrokeWidth(width);
     }
 
+    @ReactProp(name = "simplificationTolerance")
+    public void setSimplificationTolerance(View view, float tolerance) {
+        castToPolylineView(view).setSimplificationTolerance(tolerance);
+    }
+
     @ReactProp(name = "strokeColor")
     public void setStrokeColor(View view, int color) {
         castToPolylineView(view).setStrokeColor(color);
     }
 
+    @ReactProp(name = "travelledStrokeColor", defaultInt = Color.GRAY)
+    public void setTravelledStrokeColor(View view, int color) {
+        castToPolylineView(view).setTravelledStrokeColor(color);
+    }
+
     @ReactProp(name = "zIndex")
     public void setZIndex(View view, int zIndex) {
         castToPolylineView(view).setZIndex(zIndex);
     }
 
+    @ReactProp(name = "minZoom")
+    public void setMinZoom(View view, float minZoom) {
+        castToPolylineView(view).setMinZoom(minZoom);
+    }
+
+    @ReactProp(name = "maxZoom", defaultFloat = Float.MAX_VALUE)
+    public void setMaxZoom(View view, float maxZoom) {
+        castToPolylineView(view).setMaxZoom(maxZoom);
+    }
+
     @ReactProp(name = "dashLength")
     public void setDashLength(View view, int length) {
         castToPolylineView(view).setDashLength(length);
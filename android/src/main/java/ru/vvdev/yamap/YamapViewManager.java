@@ -5,13 +5,17 @@ import android.view.View;
 import androidx.annotation.NonNull;
 
 import com.facebook.infer.annotation.Assertions;
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.common.MapBuilder;
 import com.facebook.react.uimanager.ThemedReactContext;
 import com.facebook.react.uimanager.ViewGroupManager;
 import com.facebook.react.uimanager.annotations.ReactProp;
 import com.yandex.mapkit.MapKitFactory;
+import com.yandex.mapkit.geometry.BoundingBox;
 import com.yandex.mapkit.geometry.Point;
 import com.yandex.mapkit.map.CameraPosition;
 
@@ -21,6 +25,7 @@ import java.util.Map;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import ru.vvdev.yamap.utils.PackedCoordinates;
 import ru.vvdev.yamap.view.YamapView;
 
 public class YamapViewManager extends ViewGroupManager<YamapView> {
@@ -32,6 +37,11 @@ public class YamapViewManager extends ViewGroupManager<YamapView> {
     private static final int GET_CAMERA_POSITION = 4;
     private static final int GET_VISIBLE_REGION = 5;
     private static final int SET_TRAFFIC_VISIBLE = 6;
+    private static final int GET_FEATURES_IN_VISIBLE_REGION = 7;
+    private static final int GET_FEATURES_IN_BOUNDS = 8;
+    private static final int UPDATE_MARKER_POSITIONS = 9;
+    private static final int BATCH = 10;
+    private static final int SET_MAP_STYLE = 11;
 
     YamapViewManager() {
     }
@@ -52,26 +62,30 @@ public class YamapViewManager extends ViewGroupManager<YamapView> {
                 .put("cameraPosition", MapBuilder.of("phasedRegistrationNames", MapBuilder.of("bubbled", "onCameraPositionReceived")))
                 .put("cameraPositionChanged", MapBuilder.of("phasedRegistrationNames", MapBuilder.of("bubbled", "onCameraPositionChange")))
                 .put("visibleRegion", MapBuilder.of("phasedRegistrationNames", MapBuilder.of("bubbled", "onVisibleRegionReceived")))
+                .put("features", MapBuilder.of("phasedRegistrationNames", MapBuilder.of("bubbled", "onFeaturesReceived")))
                 .put("onMapPress", MapBuilder.of("phasedRegistrationNames", MapBuilder.of("bubbled", "onMapPress")))
                 .put("onMapLongPress", MapBuilder.of("phasedRegistrationNames", MapBuilder.of("bubbled", "onMapLongPress")))
+                .put("onClusterPress", MapBuilder.of("phasedRegistrationNames", MapBuilder.of("bubbled", "onClusterPress")))
+                .put("onFeaturesPress", MapBuilder.of("phasedRegistrationNames", MapBuilder.of("bubbled", "onFeaturesPress")))
+                .put("batchResult", MapBuilder.of("phasedRegistrationNames", MapBuilder.of("bubbled", "onBatchResultReceived")))
                 .build();
     }
 
     @Override
     public Map<String, Integer> getCommandsMap() {
-        return MapBuilder.of(
-                "setCenter",
-                SET_CENTER,
-                "fitAllMarkers",
-                FIT_ALL_MARKERS,
-                "setZoom",
-                SET_ZOOM,
-                "getCameraPosition",
-                GET_CAMERA_POSITION,
-                "getVisibleRegion",
-                GET_VISIBLE_REGION,
-                "setTrafficVisible",
-                SET_TRAFFIC_VISIBLE);
+        return MapBuilder.<String, Integer>builder()
+                .put("setCenter", SET_CENTER)
+                .put("fitAllMarkers", FIT_ALL_MARKERS)
+                .put("setZoom", SET_ZOOM)
+                .put("getCameraPosition", GET_CAMERA_POSITION)
+                .put("getVisibleRegion", GET_VISIBLE_REGION)
+                .put("setTrafficVisible", SET_TRAFFIC_VISIBLE)
+                .put("getFeaturesInVisibleRegion", GET_FEATURES_IN_VISIBLE_REGION)
+                .put("getFeaturesInBounds", GET_FEATURES_IN_BOUNDS)
+                .put("updateMarkerPositions", UPDATE_MARKER_POSITIONS)
+                .put("batch", BATCH)
+                .put("setMapStyle", SET_MAP_STYLE)
+                .build();
     }
 
     @Override
@@ -103,19 +117,99 @@ public class YamapViewManager extends ViewGroupManager<YamapView> {
                     view.emitVisibleRegionToJS(args.getString(0));
                 }
                 return;
+            case "getFeaturesInVisibleRegion":
+                if (args != null) {
+                    view.emitFeaturesInVisibleRegionToJS(args.getString(0));
+                }
+                return;
+            case "getFeaturesInBounds":
+                if (args != null) {
+                    view.emitFeaturesInBoundsToJS(parseBounds(args.getMap(0), args.getMap(1)), args.getString(2));
+                }
+                return;
+            case "updateMarkerPositions":
+                if (args != null) {
+                    ReadableArray ids = args.getArray(0);
+                    String[] parsedIds = new String[ids.size()];
+                    for (int i = 0; i < parsedIds.length; ++i) {
+                        parsedIds[i] = ids.getString(i);
+                    }
+                    view.updateMarkerPositions(parsedIds, PackedCoordinates.fromArray(args.getArray(1)), args.getInt(2));
+                }
+                return;
             case "setTrafficVisible":
                 if (args != null) {
                    view.setTrafficVisible(args.getBoolean(0));
                 }
                 return;
+            case "setMapStyle":
+                if (args != null) {
+                    view.setMapStyle(args.getString(0));
+                }
+                return;
+            case "batch":
+                if (args != null) {
+                    view.emitBatchResultToJS(runBatch(view, args.getArray(0)), args.getString(1));
+                }
+                return;
             default:
                 throw new IllegalArgumentException(String.format(
-                        "Unsupported command %d received by %s.",
+                        "Unsupported command %s received by %s.",
                         commandType,
                         getClass().getSimpleName()));
         }
     }
 
+    // operations of a batch run in order within one UI thread pass, so the map draws only
+    // the final state and queries see the changes made before them. Every operation gets
+    // an entry in the results, null for the ones that return nothing. An operation that
+    // fails, like an unknown or nested command or bad arguments, is skipped with an
+    // {error} entry and the rest of the batch still runs
+    private WritableArray runBatch(YamapView view, ReadableArray operations) {
+        WritableArray results = Arguments.createArray();
+        for (int i = 0; i < operations.size(); ++i) {
+            try {
+                runBatchOperation(view, operations.getMap(i), results);
+            } catch (RuntimeException e) {
+                WritableMap error = Arguments.createMap();
+                error.putString("error", e.getMessage() != null ? e.getMessage() : e.toString());
+                results.pushMap(error);
+            }
+        }
+        return results;
+    }
+
+    // pushes exactly one result, or nothing if it throws
+    private void runBatchOperation(YamapView view, ReadableMap operation, WritableArray results) {
+        String type = operation.getString("type");
+        ReadableArray args = operation.hasKey("args") ? operation.getArray("args") : Arguments.createArray();
+        switch (type) {
+            case "getCameraPosition":
+                results.pushMap(view.getCameraPositionJSON());
+                break;
+            case "getVisibleRegion":
+                results.pushMap(view.getVisibleRegionJSON());
+                break;
+            case "getFeaturesInVisibleRegion":
+                results.pushArray(view.getFeaturesInBoundsJSON(view.getVisibleBounds()));
+                break;
+            case "getFeaturesInBounds":
+                results.pushArray(view.getFeaturesInBoundsJSON(parseBounds(args.getMap(0), args.getMap(1))));
+                break;
+            case "batch":
+                throw new IllegalArgumentException("Nested batch commands are not supported.");
+            default:
+                receiveCommand(view, type, args);
+                results.pushNull();
+        }
+    }
+
+    private static BoundingBox parseBounds(ReadableMap southWest, ReadableMap northEast) {
+        return new BoundingBox(
+                new Point(southWest.getDouble("lat"), southWest.getDouble("lon")),
+                new Point(northEast.getDouble("lat"), northEast.getDouble("lon")));
+    }
+
     private YamapView castToYaMapView(View view) {
         return (YamapView) view;
     }
@@ -149,6 +243,13 @@ public class YamapViewManager extends ViewGroupManager<YamapView> {
         }
     }
 
+    @ReactProp(name = "userLocationIconSize")
+    public void setUserLocationIconSize(View view, ReadableMap size) {
+        int width = size != null && size.hasKey("width") ? size.getInt("width") : 0;
+        int height = size != null && size.hasKey("height") ? size.getInt("height") : 0;
+        castToYaMapView(view).setUserLocationIconSize(width, height);
+    }
+
     @ReactProp(name = "userLocationAccuracyFillColor")
     public void setUserLocationAccuracyFillColor(View view, int color) {
         castToYaMapView(view).setUserLocationAccuracyFillColor(color);
@@ -201,6 +302,66 @@ public class YamapViewManager extends ViewGroupManager<YamapView> {
         }
     }
 
+    @ReactProp(name = "cullingEnabled")
+    public void setCullingEnabled(View view, Boolean enabled) {
+        castToYaMapView(view).setCullingEnabled(enabled == true);
+    }
+
+    @ReactProp(name = "cullingMargin", defaultFloat = 0.5f)
+    public void setCullingMargin(View view, float margin) {
+        castToYaMapView(view).setCullingMargin(margin);
+    }
+
+    @ReactProp(name = "cameraEventMaxRate")
+    public void setCameraEventMaxRate(View view, float rate) {
+        castToYaMapView(view).setCameraEventMaxRate(rate);
+    }
+
+    @ReactProp(name = "cameraEventMinZoomDelta")
+    public void setCameraEventMinZoomDelta(View view, float delta) {
+        castToYaMapView(view).setCameraEventMinZoomDelta(delta);
+    }
+
+    @ReactProp(name = "cameraEventMinDistance")
+    public void setCameraEventMinDistance(View view, float distance) {
+        castToYaMapView(view).setCameraEventMinDistance(distance);
+    }
+
+    @ReactProp(name = "cameraEventMinAzimuthDelta")
+    public void setCameraEventMinAzimuthDelta(View view, float delta) {
+        castToYaMapView(view).setCameraEventMinAzimuthDelta(delta);
+    }
+
+    @ReactProp(name = "cameraEventsFinishedOnly")
+    public void setCameraEventsFinishedOnly(View view, Boolean finishedOnly) {
+        castToYaMapView(view).setCameraEventsFinishedOnly(finishedOnly == true);
+    }
+
+    @ReactProp(name = "clusterMarkers")
+    public void setClusterMarkers(View view, Boolean clusterMarkers) {
+        castToYaMapView(view).setClusterMarkers(clusterMarkers == true);
+    }
+
+    @ReactProp(name = "clusterRadius", defaultInt = 60)
+    public void setClusterRadius(View view, int radius) {
+        castToYaMapView(view).setClusterRadius(radius);
+    }
+
+    @ReactProp(name = "clusterMaxZoom", defaultInt = 16)
+    public void setClusterMaxZoom(View view, int maxZoom) {
+        castToYaMapView(view).setClusterMaxZoom(maxZoom);
+    }
+
+    @ReactProp(name = "clusterColor")
+    public void setClusterColor(View view, int color) {
+        castToYaMapView(view).setClusterColor(color);
+    }
+
+    @ReactProp(name = "tapTolerance", defaultFloat = 12f)
+    public void setTapTolerance(View view, float tolerance) {
+        castToYaMapView(view).setTapTolerance(tolerance);
+    }
+
     @Override
     public void addView(YamapView parent, View child, int index) {
         parent.addFeature(child, index);
@@ -0,0 +1,111 @@
+package ru.vvdev.yamap.events;
+
+import androidx.core.util.Pools;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.uimanager.events.Event;
+import com.facebook.react.uimanager.events.RCTEventEmitter;
+import com.yandex.mapkit.map.CameraPosition;
+
+import javax.annotation.Nullable;
+
+// Camera position of a map. Moving events with the same coalescing key replace each other
+// in the dispatcher queue, so a busy JS thread only gets the latest position. Finished
+// events and replies to getCameraPosition are never dropped
+public class CameraPositionEvent extends Event<CameraPositionEvent> {
+    public static final String EVENT_CHANGED = "cameraPositionChanged";
+    public static final String EVENT_RECEIVED = "cameraPosition";
+
+    private static final Pools.SynchronizedPool<CameraPositionEvent> EVENTS_POOL = new Pools.SynchronizedPool<>(4);
+
+    private String eventName;
+    private double lat;
+    private double lon;
+    private float zoom;
+    private float azimuth;
+    private float tilt;
+    private boolean finished;
+    private short coalescingKey;
+    private @Nullable String id;
+
+    private CameraPositionEvent() {
+    }
+
+    // coalescingKey should change between camera movements, so moving events of different
+    // movements are kept apart
+    public static CameraPositionEvent obtainChanged(int viewTag, CameraPosition position, boolean finished, short coalescingKey) {
+        return obtain(viewTag, EVENT_CHANGED, position, finished, coalescingKey, null);
+    }
+
+    public static CameraPositionEvent obtainReceived(int viewTag, CameraPosition position, String id) {
+        return obtain(viewTag, EVENT_RECEIVED, position, true, (short) 0, id);
+    }
+
+    private static CameraPositionEvent obtain(int viewTag, String eventName, CameraPosition position, boolean finished, short coalescingKey, @Nullable String id) {
+        CameraPositionEvent event = EVENTS_POOL.acquire();
+        if (event == null) {
+            event = new CameraPositionEvent();
+        }
+        event.init(viewTag);
+        event.eventName = eventName;
+        event.lat = position.getTarget().getLatitude();
+        event.lon = position.getTarget().getLongitude();
+        event.zoom = position.getZoom();
+        event.azimuth = position.getAzimuth();
+        event.tilt = position.getTilt();
+        event.finished = finished;
+        event.coalescingKey = coalescingKey;
+        event.id = id;
+        return event;
+    }
+
+    @Override
+    public String getEventName() {
+        return eventName;
+    }
+
+    @Override
+    public boolean canCoalesce() {
+        return EVENT_CHANGED.equals(eventName) && !finished;
+    }
+
+    @Override
+    public short getCoalescingKey() {
+        return coalescingKey;
+    }
+
+    @Override
+    public void onDispose() {
+        id = null;
+        EVENTS_POOL.release(this);
+    }
+
+    public static WritableMap toJSON(CameraPosition position, boolean finished) {
+        return toJSON(position.getTarget().getLatitude(), position.getTarget().getLongitude(),
+                position.getZoom(), position.getAzimuth(), position.getTilt(), finished);
+    }
+
+    private static WritableMap toJSON(double lat, double lon, float zoom, float azimuth, float tilt, boolean finished) {
+        WritableMap cameraPosition = Arguments.createMap();
+        cameraPosition.putDouble("azimuth", azimuth);
+        cameraPosition.putDouble("tilt", tilt);
+        cameraPosition.putDouble("zoom", zoom);
+        WritableMap target = Arguments.createMap();
+        target.putDouble("lat", lat);
+        target.putDouble("lon", lon);
+        cameraPosition.putMap("point", target);
+        cameraPosition.putBoolean("finished", finished);
+        return cameraPosition;
+    }
+
+    // the payload is built only for events that reach JS
+    @Override
+    public void dispatch(RCTEventEmitter rctEventEmitter) {
+        WritableMap cameraPosition = toJSON(lat, lon, zoom, azimuth, tilt, finished);
+        if (id != null) {
+            cameraPosition.putString("id", id);
+        }
+        rctEventEmitter.receiveEvent(getViewTag(), eventName, cameraPosition);
+    }
+}
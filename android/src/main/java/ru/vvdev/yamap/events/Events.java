@@ -0,0 +1,20 @@
+package ru.vvdev.yamap.events;
+
+import android.view.View;
+
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.uimanager.UIManagerModule;
+import com.facebook.react.uimanager.events.Event;
+
+public class Events {
+    // events go through the UIManager dispatcher, which coalesces them and sends them
+    // to JS in batches once per frame
+    public static void dispatch(View view, Event event) {
+        UIManagerModule uiManager = ((ReactContext) view.getContext()).getNativeModule(UIManagerModule.class);
+        if (uiManager == null) {
+            event.dispose();
+            return;
+        }
+        uiManager.getEventDispatcher().dispatchEvent(event);
+    }
+}
@@ -0,0 +1,52 @@
+package ru.vvdev.yamap.events;
+
+import androidx.core.util.Pools;
+
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.uimanager.events.Event;
+import com.facebook.react.uimanager.events.RCTEventEmitter;
+
+// Event with a prepared payload, for replies to commands and cluster presses whose
+// payloads hold arrays of ids
+public class MapDataEvent extends Event<MapDataEvent> {
+    private static final Pools.SynchronizedPool<MapDataEvent> EVENTS_POOL = new Pools.SynchronizedPool<>(4);
+
+    private String eventName;
+    private WritableMap data;
+
+    private MapDataEvent() {
+    }
+
+    public static MapDataEvent obtain(int viewTag, String eventName, WritableMap data) {
+        MapDataEvent event = EVENTS_POOL.acquire();
+        if (event == null) {
+            event = new MapDataEvent();
+        }
+        event.init(viewTag);
+        event.eventName = eventName;
+        event.data = data;
+        return event;
+    }
+
+    @Override
+    public String getEventName() {
+        return eventName;
+    }
+
+    // replies are matched by their id in JS, none of them can be dropped
+    @Override
+    public boolean canCoalesce() {
+        return false;
+    }
+
+    @Override
+    public void onDispose() {
+        data = null;
+        EVENTS_POOL.release(this);
+    }
+
+    @Override
+    public void dispatch(RCTEventEmitter rctEventEmitter) {
+        rctEventEmitter.receiveEvent(getViewTag(), eventName, data);
+    }
+}
@@ -0,0 +1,61 @@
+package ru.vvdev.yamap.events;
+
+import androidx.core.util.Pools;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.uimanager.events.Event;
+import com.facebook.react.uimanager.events.RCTEventEmitter;
+
+import javax.annotation.Nullable;
+
+// press on a marker, line, polygon, circle or an item of a marker collection
+public class MapObjectPressEvent extends Event<MapObjectPressEvent> {
+    public static final String EVENT_PRESS = "onPress";
+    public static final String EVENT_ITEM_PRESS = "onItemPress";
+
+    private static final Pools.SynchronizedPool<MapObjectPressEvent> EVENTS_POOL = new Pools.SynchronizedPool<>(4);
+
+    private String eventName;
+    private @Nullable String id;
+
+    private MapObjectPressEvent() {
+    }
+
+    // id of the pressed item, null for objects without items
+    public static MapObjectPressEvent obtain(int viewTag, String eventName, @Nullable String id) {
+        MapObjectPressEvent event = EVENTS_POOL.acquire();
+        if (event == null) {
+            event = new MapObjectPressEvent();
+        }
+        event.init(viewTag);
+        event.eventName = eventName;
+        event.id = id;
+        return event;
+    }
+
+    @Override
+    public String getEventName() {
+        return eventName;
+    }
+
+    @Override
+    public boolean canCoalesce() {
+        return false;
+    }
+
+    @Override
+    public void onDispose() {
+        id = null;
+        EVENTS_POOL.release(this);
+    }
+
+    @Override
+    public void dispatch(RCTEventEmitter rctEventEmitter) {
+        WritableMap e = Arguments.createMap();
+        if (id != null) {
+            e.putString("id", id);
+        }
+        rctEventEmitter.receiveEvent(getViewTag(), eventName, e);
+    }
+}
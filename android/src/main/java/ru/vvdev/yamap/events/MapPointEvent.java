@@ -0,0 +1,60 @@
+package ru.vvdev.yamap.events;
+
+import androidx.core.util.Pools;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.uimanager.events.Event;
+import com.facebook.react.uimanager.events.RCTEventEmitter;
+import com.yandex.mapkit.geometry.Point;
+
+// press and long press on the map
+public class MapPointEvent extends Event<MapPointEvent> {
+    public static final String EVENT_PRESS = "onMapPress";
+    public static final String EVENT_LONG_PRESS = "onMapLongPress";
+
+    private static final Pools.SynchronizedPool<MapPointEvent> EVENTS_POOL = new Pools.SynchronizedPool<>(2);
+
+    private String eventName;
+    private double lat;
+    private double lon;
+
+    private MapPointEvent() {
+    }
+
+    public static MapPointEvent obtain(int viewTag, String eventName, Point point) {
+        MapPointEvent event = EVENTS_POOL.acquire();
+        if (event == null) {
+            event = new MapPointEvent();
+        }
+        event.init(viewTag);
+        event.eventName = eventName;
+        event.lat = point.getLatitude();
+        event.lon = point.getLongitude();
+        return event;
+    }
+
+    @Override
+    public String getEventName() {
+        return eventName;
+    }
+
+    // every press is delivered
+    @Override
+    public boolean canCoalesce() {
+        return false;
+    }
+
+    @Override
+    public void onDispose() {
+        EVENTS_POOL.release(this);
+    }
+
+    @Override
+    public void dispatch(RCTEventEmitter rctEventEmitter) {
+        WritableMap data = Arguments.createMap();
+        data.putDouble("lat", lat);
+        data.putDouble("lon", lon);
+        rctEventEmitter.receiveEvent(getViewTag(), eventName, data);
+    }
+}
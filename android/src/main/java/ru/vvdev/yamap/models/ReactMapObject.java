@@ -1,8 +1,20 @@
 package ru.vvdev.yamap.models;
 
+import com.yandex.mapkit.geometry.BoundingBox;
+import com.yandex.mapkit.geometry.Point;
 import com.yandex.mapkit.map.MapObject;
 
 public interface ReactMapObject {
     MapObject getMapObject();
     void setMapObject(MapObject obj);
+    // null while the object has no geometry
+    BoundingBox getBounds();
+    // hidden by viewport culling of the map
+    void setCulled(boolean culled);
+    // applies minZoom/maxZoom
+    void onCameraZoomChanged(float zoom);
+    // on the map and not hidden, hidden objects are skipped by hit testing
+    boolean isShownOnMap();
+    // whether a tap at the point hits the object, tolerance in meters
+    boolean hitTest(Point point, double tolerance);
 }
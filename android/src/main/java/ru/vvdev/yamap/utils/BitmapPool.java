@@ -0,0 +1,54 @@
+package ru.vvdev.yamap.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Reusable bitmaps grouped by size and config, used for marker view snapshots
+public class BitmapPool {
+    private static final int MAX_POOL_SIZE = 4 * 1024 * 1024;
+
+    private static final HashMap<String, ArrayList<Bitmap>> pool = new HashMap<>();
+    private static int size = 0;
+
+    private static String key(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + ":" + config.name();
+    }
+
+    // cleared bitmap of the given size, from the pool if there is one
+    public static synchronized Bitmap acquire(int width, int height, Bitmap.Config config) {
+        ArrayList<Bitmap> bitmaps = pool.get(key(width, height, config));
+        if (bitmaps != null && !bitmaps.isEmpty()) {
+            Bitmap bitmap = bitmaps.remove(bitmaps.size() - 1);
+            size -= bitmap.getByteCount();
+            bitmap.eraseColor(Color.TRANSPARENT);
+            return bitmap;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    public static synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        int bytes = bitmap.getByteCount();
+        if (size + bytes > MAX_POOL_SIZE) {
+            return;
+        }
+        String key = key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayList<Bitmap> bitmaps = pool.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayList<>();
+            pool.put(key, bitmaps);
+        }
+        bitmaps.add(bitmap);
+        size += bytes;
+    }
+
+    public static synchronized void clear() {
+        pool.clear();
+        size = 0;
+    }
+}
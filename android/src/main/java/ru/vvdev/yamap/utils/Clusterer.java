@@ -0,0 +1,163 @@
+package ru.vvdev.yamap.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+// Hierarchical grid clustering of points, precomputed for every zoom level.
+// Points are projected to web mercator in [0..1]; at zoom z clusters of the
+// level z + 1 that fall into one cell of radius / (256 * 2^z) are merged
+public class Clusterer {
+    private static final double TILE_SIZE = 256;
+
+    public static class Cluster {
+        final double x;
+        final double y;
+        public final int count;
+        // index of the point for single point clusters, -1 otherwise
+        public final int item;
+        final Cluster[] children;
+
+        Cluster(double x, double y, int count, int item, Cluster[] children) {
+            this.x = x;
+            this.y = y;
+            this.count = count;
+            this.item = item;
+            this.children = children;
+        }
+
+        public double getLatitude() {
+            return GeometryUtils.yToLat(y);
+        }
+
+        public double getLongitude() {
+            return GeometryUtils.xToLon(x);
+        }
+
+        // indices of all points of the cluster
+        public int[] getItems() {
+            int[] items = new int[count];
+            collect(this, items, 0);
+            return items;
+        }
+
+        private static int collect(Cluster cluster, int[] items, int offset) {
+            if (cluster.children == null) {
+                items[offset] = cluster.item;
+                return offset + 1;
+            }
+            for (Cluster child : cluster.children) {
+                offset = collect(child, items, offset);
+            }
+            return offset;
+        }
+    }
+
+    private final double radius;
+    private final int minZoom;
+    private final int maxZoom;
+    // clusters of every level sorted by x, levels[maxZoom + 1] are the points themselves
+    private Cluster[][] levels;
+
+    public Clusterer(double radius, int minZoom, int maxZoom) {
+        this.radius = radius;
+        this.minZoom = Math.max(0, minZoom);
+        this.maxZoom = Math.max(this.minZoom, maxZoom);
+        this.levels = new Cluster[this.maxZoom + 2][];
+        Arrays.fill(levels, new Cluster[0]);
+    }
+
+    public void load(double[] lats, double[] lons, int count) {
+        Cluster[] points = new Cluster[count];
+        for (int i = 0; i < count; ++i) {
+            points[i] = new Cluster(GeometryUtils.lonToX(lons[i]), GeometryUtils.latToY(lats[i]), 1, i, null);
+        }
+        levels = new Cluster[maxZoom + 2][];
+        levels[maxZoom + 1] = sorted(points);
+        for (int z = maxZoom; z >= minZoom; --z) {
+            levels[z] = sorted(cluster(levels[z + 1], z));
+        }
+    }
+
+    private Cluster[] cluster(Cluster[] nodes, int zoom) {
+        double cell = radius / (TILE_SIZE * Math.pow(2, zoom));
+        HashMap<Long, ArrayList<Cluster>> cells = new HashMap<>();
+        ArrayList<Long> order = new ArrayList<>();
+        for (Cluster node : nodes) {
+            long key = ((long) Math.floor(node.x / cell) << 32) ^ ((long) Math.floor(node.y / cell) & 0xffffffffL);
+            ArrayList<Cluster> members = cells.get(key);
+            if (members == null) {
+                members = new ArrayList<>();
+                cells.put(key, members);
+                order.add(key);
+            }
+            members.add(node);
+        }
+        Cluster[] result = new Cluster[order.size()];
+        for (int i = 0; i < result.length; ++i) {
+            ArrayList<Cluster> members = cells.get(order.get(i));
+            if (members.size() == 1) {
+                result[i] = members.get(0);
+                continue;
+            }
+            double x = 0;
+            double y = 0;
+            int count = 0;
+            for (Cluster member : members) {
+                x += member.x * member.count;
+                y += member.y * member.count;
+                count += member.count;
+            }
+            result[i] = new Cluster(x / count, y / count, count, -1, members.toArray(new Cluster[0]));
+        }
+        return result;
+    }
+
+    private static Cluster[] sorted(Cluster[] nodes) {
+        Arrays.sort(nodes, new Comparator<Cluster>() {
+            @Override
+            public int compare(Cluster a, Cluster b) {
+                return Double.compare(a.x, b.x);
+            }
+        });
+        return nodes;
+    }
+
+    // clusters of the zoom level inside the box
+    public List<Cluster> getClusters(double minLat, double minLon, double maxLat, double maxLon, float zoom) {
+        int z = Math.max(minZoom, Math.min(maxZoom + 1, (int) Math.floor(zoom)));
+        Cluster[] level = levels[z];
+        double minX = GeometryUtils.lonToX(minLon);
+        double maxX = GeometryUtils.lonToX(maxLon);
+        double minY = GeometryUtils.latToY(maxLat);
+        double maxY = GeometryUtils.latToY(minLat);
+        List<Cluster> result = new ArrayList<>();
+        for (int i = lowerBound(level, minX); i < level.length && level[i].x <= maxX; ++i) {
+            Cluster cluster = level[i];
+            if (cluster.y >= minY && cluster.y <= maxY) {
+                result.add(cluster);
+            }
+        }
+        return result;
+    }
+
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    private static int lowerBound(Cluster[] level, double x) {
+        int lo = 0;
+        int hi = level.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (level[mid].x < x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
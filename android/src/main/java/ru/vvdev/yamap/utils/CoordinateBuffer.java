@@ -0,0 +1,179 @@
+package ru.vvdev.yamap.utils;
+
+import com.yandex.mapkit.geometry.BoundingBox;
+import com.yandex.mapkit.geometry.Point;
+
+import java.util.AbstractList;
+import java.util.List;
+
+// Growable [lat0, lon0, lat1, lon1, ...] storage for lines that change at the ends.
+// Appending is amortized O(1), trimming from the start only moves the head offset
+public class CoordinateBuffer {
+    private double[] data = new double[32];
+    // index of the first latitude in data
+    private int head = 0;
+    private int size = 0;
+
+    // bounds of the points, recomputed lazily after a trim
+    private double minLat;
+    private double minLon;
+    private double maxLat;
+    private double maxLon;
+    private boolean boundsValid = true;
+
+    private final List<Point> points = new AbstractList<Point>() {
+        @Override
+        public Point get(int index) {
+            return new Point(getLatitude(index), getLongitude(index));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+
+    public int size() {
+        return size;
+    }
+
+    public double getLatitude(int index) {
+        return data[head + index * 2];
+    }
+
+    public double getLongitude(int index) {
+        return data[head + index * 2 + 1];
+    }
+
+    public void set(double[] coordinates) {
+        clear();
+        append(coordinates);
+    }
+
+    public void set(List<Point> _points) {
+        clear();
+        ensureCapacity(_points.size());
+        for (Point point : _points) {
+            append(point.getLatitude(), point.getLongitude());
+        }
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        boundsValid = true;
+    }
+
+    public void append(double[] coordinates) {
+        int count = coordinates.length / 2;
+        ensureCapacity(count);
+        for (int i = 0; i < count; ++i) {
+            append(coordinates[i * 2], coordinates[i * 2 + 1]);
+        }
+    }
+
+    public void append(double lat, double lon) {
+        ensureCapacity(1);
+        int offset = head + size * 2;
+        data[offset] = lat;
+        data[offset + 1] = lon;
+        if (boundsValid) {
+            if (size == 0) {
+                minLat = maxLat = lat;
+                minLon = maxLon = lon;
+            } else {
+                minLat = Math.min(minLat, lat);
+                maxLat = Math.max(maxLat, lat);
+                minLon = Math.min(minLon, lon);
+                maxLon = Math.max(maxLon, lon);
+            }
+        }
+        ++size;
+    }
+
+    // drops count points from the start
+    public void trimStart(int count) {
+        count = Math.max(0, Math.min(count, size));
+        if (count == 0) {
+            return;
+        }
+        head += count * 2;
+        size -= count;
+        boundsValid = false;
+    }
+
+    // drops count points from the end
+    public void trimEnd(int count) {
+        count = Math.max(0, Math.min(count, size));
+        if (count == 0) {
+            return;
+        }
+        size -= count;
+        boundsValid = false;
+    }
+
+    // moves the first point, for lines whose start follows a trimmed source line
+    public void setFirst(double lat, double lon) {
+        if (size == 0) {
+            return;
+        }
+        data[head] = lat;
+        data[head + 1] = lon;
+        boundsValid = false;
+    }
+
+    public BoundingBox getBounds() {
+        if (size == 0) {
+            return null;
+        }
+        if (!boundsValid) {
+            minLat = maxLat = getLatitude(0);
+            minLon = maxLon = getLongitude(0);
+            for (int i = 1; i < size; ++i) {
+                minLat = Math.min(minLat, getLatitude(i));
+                maxLat = Math.max(maxLat, getLatitude(i));
+                minLon = Math.min(minLon, getLongitude(i));
+                maxLon = Math.max(maxLon, getLongitude(i));
+            }
+            boundsValid = true;
+        }
+        return new BoundingBox(new Point(minLat, minLon), new Point(maxLat, maxLon));
+    }
+
+    // view without copying, points are created on access. MapKit copies the list into a
+    // Polyline, so a Polyline built from it does not see later changes
+    public List<Point> asPoints() {
+        return points;
+    }
+
+    // same value as GeometryUtils.hash over toArray()
+    public long hash() {
+        long hash = GeometryUtils.HASH_SEED;
+        for (int i = head; i < head + size * 2; ++i) {
+            hash = GeometryUtils.hash(hash, data[i]);
+        }
+        return GeometryUtils.hash(hash, size * 2);
+    }
+
+    public double[] toArray() {
+        double[] result = new double[size * 2];
+        System.arraycopy(data, head, result, 0, size * 2);
+        return result;
+    }
+
+    private void ensureCapacity(int extra) {
+        int needed = (size + extra) * 2;
+        if (head + needed <= data.length) {
+            return;
+        }
+        // the trimmed head is reclaimed first, the array grows only when that is not enough
+        if (needed <= data.length && head >= data.length / 2) {
+            System.arraycopy(data, head, data, 0, size * 2);
+        } else {
+            double[] grown = new double[Math.max(needed, data.length * 2)];
+            System.arraycopy(data, head, grown, 0, size * 2);
+            data = grown;
+        }
+        head = 0;
+    }
+}
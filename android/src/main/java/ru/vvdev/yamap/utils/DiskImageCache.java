@@ -0,0 +1,309 @@
+package ru.vvdev.yamap.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Properties;
+
+// Persistent cache of remote icon bytes. Each entry is a pair of files named
+// by the url hash: <hash>.bin with the body and <hash>.meta with the validators
+// (ETag / Last-Modified) used for conditional requests
+public class DiskImageCache {
+    private static final String DATA_EXT = ".bin";
+    private static final String META_EXT = ".meta";
+    private static final String TMP_EXT = ".tmp";
+    private static final int CONNECT_TIMEOUT = 15000;
+    private static final int READ_TIMEOUT = 15000;
+
+    private final File dir;
+    private final long maxSize;
+
+    public DiskImageCache(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+    }
+
+    // cached body or null, without touching the network
+    public byte[] get(String url) {
+        File data = dataFile(url);
+        synchronized (this) {
+            if (!data.exists()) {
+                return null;
+            }
+            try {
+                byte[] bytes = readFile(data);
+                data.setLastModified(System.currentTimeMillis());
+                return bytes;
+            } catch (IOException e) {
+                e.printStackTrace();
+                remove(url);
+                return null;
+            }
+        }
+    }
+
+    // unconditional download, stores the result
+    public byte[] fetch(String url) throws IOException {
+        return load(url, null);
+    }
+
+    // conditional request with the stored validators; returns new body if the
+    // resource has changed, null if it is still valid (304). Entries stored without
+    // validators cannot be checked cheaply and are kept as they are
+    public byte[] revalidate(String url) throws IOException {
+        Properties meta;
+        byte[] previous;
+        synchronized (this) {
+            meta = readMeta(url);
+            previous = meta != null ? get(url) : null;
+        }
+        if (meta == null || previous == null) {
+            return fetch(url);
+        }
+        if (meta.getProperty("etag") == null && meta.getProperty("lastModified") == null) {
+            return null;
+        }
+        byte[] body = load(url, meta);
+        // servers that ignore the conditional headers answer 200 with the same body
+        if (body != null && Arrays.equals(body, previous)) {
+            return null;
+        }
+        return body;
+    }
+
+    private byte[] load(String url, Properties validators) throws IOException {
+        URLConnection conn = new URL(url).openConnection();
+        conn.setConnectTimeout(CONNECT_TIMEOUT);
+        conn.setReadTimeout(READ_TIMEOUT);
+        if (validators != null) {
+            String etag = validators.getProperty("etag");
+            String lastModified = validators.getProperty("lastModified");
+            if (etag != null) {
+                conn.setRequestProperty("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                conn.setRequestProperty("If-Modified-Since", lastModified);
+            }
+        }
+        try {
+            conn.connect();
+            if (conn instanceof HttpURLConnection) {
+                int code = ((HttpURLConnection) conn).getResponseCode();
+                if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    synchronized (this) {
+                        dataFile(url).setLastModified(System.currentTimeMillis());
+                    }
+                    return null;
+                }
+                if (code < 200 || code >= 300) {
+                    throw new IOException("Unexpected response " + code + " for " + url);
+                }
+            }
+            InputStream is = conn.getInputStream();
+            byte[] body;
+            try {
+                body = readStream(is);
+            } finally {
+                is.close();
+            }
+            Properties meta = new Properties();
+            meta.setProperty("url", url);
+            if (conn.getHeaderField("ETag") != null) {
+                meta.setProperty("etag", conn.getHeaderField("ETag"));
+            }
+            if (conn.getHeaderField("Last-Modified") != null) {
+                meta.setProperty("lastModified", conn.getHeaderField("Last-Modified"));
+            }
+            put(url, body, meta);
+            return body;
+        } finally {
+            if (conn instanceof HttpURLConnection) {
+                ((HttpURLConnection) conn).disconnect();
+            }
+        }
+    }
+
+    private synchronized void put(String url, byte[] body, Properties meta) {
+        try {
+            File data = dataFile(url);
+            File metaFile = metaFile(url);
+            File dataTmp = new File(dir, data.getName() + TMP_EXT);
+            File metaTmp = new File(dir, metaFile.getName() + TMP_EXT);
+            writeFile(dataTmp, body);
+            OutputStream os = new FileOutputStream(metaTmp);
+            try {
+                meta.store(os, null);
+            } finally {
+                os.close();
+            }
+            // the old validators are dropped before the body is replaced and the new ones
+            // go last, so a crash in between leaves a body without validators (fetched
+            // unconditionally next time) and never new validators next to an old body
+            metaFile.delete();
+            if (!dataTmp.renameTo(data) || !metaTmp.renameTo(metaFile)) {
+                dataTmp.delete();
+                metaTmp.delete();
+                remove(url);
+                return;
+            }
+            trim();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void remove(String url) {
+        dataFile(url).delete();
+        metaFile(url).delete();
+    }
+
+    public synchronized void clear() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    public synchronized long size() {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    // removes files left behind by an interrupted put, then drops least recently used
+    // entries until the cache fits into maxSize
+    private void trim() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        ArrayList<File> entries = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            // puts hold the lock, so no temporary file is being written now
+            boolean orphan = name.endsWith(TMP_EXT) || (name.endsWith(META_EXT)
+                    && !new File(dir, name.substring(0, name.length() - META_EXT.length()) + DATA_EXT).exists());
+            if (orphan) {
+                file.delete();
+                continue;
+            }
+            size += file.length();
+            if (name.endsWith(DATA_EXT)) {
+                entries.add(file);
+            }
+        }
+        if (size <= maxSize) {
+            return;
+        }
+        Collections.sort(entries, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (File file : entries) {
+            if (size <= maxSize) {
+                break;
+            }
+            String name = file.getName();
+            File meta = new File(dir, name.substring(0, name.length() - DATA_EXT.length()) + META_EXT);
+            size -= file.length() + meta.length();
+            file.delete();
+            meta.delete();
+        }
+    }
+
+    private Properties readMeta(String url) {
+        File file = metaFile(url);
+        if (!file.exists() || !dataFile(url).exists()) {
+            return null;
+        }
+        Properties meta = new Properties();
+        try {
+            InputStream is = new FileInputStream(file);
+            try {
+                meta.load(is);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return meta;
+    }
+
+    private File dataFile(String url) {
+        return new File(dir, hash(url) + DATA_EXT);
+    }
+
+    private File metaFile(String url) {
+        return new File(dir, hash(url) + META_EXT);
+    }
+
+    private static String hash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(url.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        InputStream is = new FileInputStream(file);
+        try {
+            return readStream(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    private static void writeFile(File file, byte[] data) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(data);
+            os.getFD().sync();
+        } finally {
+            os.close();
+        }
+    }
+
+    private static byte[] readStream(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = is.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
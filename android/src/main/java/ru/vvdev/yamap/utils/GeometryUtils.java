@@ -0,0 +1,174 @@
+package ru.vvdev.yamap.utils;
+
+import com.yandex.mapkit.geometry.BoundingBox;
+import com.yandex.mapkit.geometry.Point;
+
+import java.util.List;
+
+public class GeometryUtils {
+    private static final double METERS_PER_DEGREE = 111320;
+    private static final double MAX_LATITUDE = 85.05112878;
+    private static final double EARTH_RADIUS = 6371000;
+
+    public static BoundingBox boundsOf(List<Point> points) {
+        if (points == null || points.isEmpty()) {
+            return null;
+        }
+        double minLat = points.get(0).getLatitude();
+        double maxLat = minLat;
+        double minLon = points.get(0).getLongitude();
+        double maxLon = minLon;
+        for (int i = 1; i < points.size(); ++i) {
+            Point point = points.get(i);
+            minLat = Math.min(minLat, point.getLatitude());
+            maxLat = Math.max(maxLat, point.getLatitude());
+            minLon = Math.min(minLon, point.getLongitude());
+            maxLon = Math.max(maxLon, point.getLongitude());
+        }
+        return new BoundingBox(new Point(minLat, minLon), new Point(maxLat, maxLon));
+    }
+
+    // coordinates as [lat0, lon0, lat1, lon1, ...]
+    public static BoundingBox boundsOf(double[] coordinates, int count) {
+        if (count == 0) {
+            return null;
+        }
+        double minLat = coordinates[0];
+        double maxLat = minLat;
+        double minLon = coordinates[1];
+        double maxLon = minLon;
+        for (int i = 1; i < count; ++i) {
+            minLat = Math.min(minLat, coordinates[i * 2]);
+            maxLat = Math.max(maxLat, coordinates[i * 2]);
+            minLon = Math.min(minLon, coordinates[i * 2 + 1]);
+            maxLon = Math.max(maxLon, coordinates[i * 2 + 1]);
+        }
+        return new BoundingBox(new Point(minLat, minLon), new Point(maxLat, maxLon));
+    }
+
+    // box around a circle, radius in meters
+    public static BoundingBox boundsOf(Point center, double radius) {
+        double dLat = radius / METERS_PER_DEGREE;
+        double cos = Math.cos(Math.toRadians(center.getLatitude()));
+        double dLon = cos > 1e-6 ? dLat / cos : 180;
+        return new BoundingBox(
+                new Point(center.getLatitude() - dLat, center.getLongitude() - dLon),
+                new Point(center.getLatitude() + dLat, center.getLongitude() + dLon));
+    }
+
+    // great circle distance in meters
+    public static double distance(double lat0, double lon0, double lat1, double lon1) {
+        double dLat = Math.toRadians(lat1 - lat0);
+        double dLon = Math.toRadians(lon1 - lon0);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat0)) * Math.cos(Math.toRadians(lat1)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    // even-odd rule, the ring may be closed or not
+    public static boolean containsPoint(List<Point> ring, double lat, double lon) {
+        boolean inside = false;
+        int count = ring.size();
+        for (int i = 0, j = count - 1; i < count; j = i++) {
+            Point a = ring.get(i);
+            Point b = ring.get(j);
+            if ((a.getLatitude() > lat) != (b.getLatitude() > lat)
+                    && lon < (b.getLongitude() - a.getLongitude()) * (lat - a.getLatitude()) / (b.getLatitude() - a.getLatitude()) + a.getLongitude()) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    // meters from the point to the closest segment, measured on a plane around the point,
+    // which is exact enough at tap distances
+    public static double distanceToLine(List<Point> line, double lat, double lon, boolean closed) {
+        int count = line.size();
+        if (count == 0) {
+            return Double.MAX_VALUE;
+        }
+        double scale = Math.cos(Math.toRadians(lat));
+        double best = Double.MAX_VALUE;
+        Point previous = closed ? line.get(count - 1) : line.get(0);
+        for (int i = closed ? 0 : 1; i < count; ++i) {
+            Point point = line.get(i);
+            double ax = (previous.getLongitude() - lon) * scale;
+            double ay = previous.getLatitude() - lat;
+            double dx = (point.getLongitude() - previous.getLongitude()) * scale;
+            double dy = point.getLatitude() - previous.getLatitude();
+            double lengthSquared = dx * dx + dy * dy;
+            double t = lengthSquared > 0 ? Math.max(0, Math.min(1, -(ax * dx + ay * dy) / lengthSquared)) : 0;
+            double x = ax + t * dx;
+            double y = ay + t * dy;
+            best = Math.min(best, x * x + y * y);
+            previous = point;
+        }
+        if (count == 1) {
+            double x = (previous.getLongitude() - lon) * scale;
+            double y = previous.getLatitude() - lat;
+            best = x * x + y * y;
+        }
+        return Math.sqrt(best) * METERS_PER_DEGREE;
+    }
+
+    public static boolean intersects(BoundingBox a, BoundingBox b) {
+        return a.getSouthWest().getLatitude() <= b.getNorthEast().getLatitude()
+                && a.getNorthEast().getLatitude() >= b.getSouthWest().getLatitude()
+                && a.getSouthWest().getLongitude() <= b.getNorthEast().getLongitude()
+                && a.getNorthEast().getLongitude() >= b.getSouthWest().getLongitude();
+    }
+
+    // box grown on every side by a fraction of its size
+    public static BoundingBox expand(BoundingBox box, double fraction) {
+        double latMargin = (box.getNorthEast().getLatitude() - box.getSouthWest().getLatitude()) * fraction;
+        double lonMargin = (box.getNorthEast().getLongitude() - box.getSouthWest().getLongitude()) * fraction;
+        return new BoundingBox(
+                new Point(box.getSouthWest().getLatitude() - latMargin, box.getSouthWest().getLongitude() - lonMargin),
+                new Point(box.getNorthEast().getLatitude() + latMargin, box.getNorthEast().getLongitude() + lonMargin));
+    }
+
+    // web mercator, the world is [0..1] on both axes
+    public static double lonToX(double lon) {
+        return lon / 360 + 0.5;
+    }
+
+    public static double latToY(double lat) {
+        double clamped = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, lat));
+        double sin = Math.sin(clamped * Math.PI / 180);
+        return 0.5 - 0.25 * Math.log((1 + sin) / (1 - sin)) / Math.PI;
+    }
+
+    public static double xToLon(double x) {
+        return (x - 0.5) * 360;
+    }
+
+    public static double yToLat(double y) {
+        double y2 = (180 - y * 360) * Math.PI / 180;
+        return 360 * Math.atan(Math.exp(y2)) / Math.PI - 90;
+    }
+
+    // 64-bit content hash of coordinates, equal geometries hash equal no matter how they
+    // are stored. Start from HASH_SEED and chain the parts of a geometry
+    public static final long HASH_SEED = 0xcbf29ce484222325L;
+
+    public static long hash(long hash, double value) {
+        hash = (hash ^ Double.doubleToLongBits(value)) * 0x100000001b3L;
+        return hash ^ (hash >>> 29);
+    }
+
+    // coordinates as [lat0, lon0, lat1, lon1, ...]
+    public static long hash(long hash, double[] coordinates) {
+        for (double value : coordinates) {
+            hash = hash(hash, value);
+        }
+        return hash(hash, coordinates.length);
+    }
+
+    public static long hash(long hash, List<Point> points) {
+        for (Point point : points) {
+            hash = hash(hash, point.getLatitude());
+            hash = hash(hash, point.getLongitude());
+        }
+        return hash(hash, points.size() * 2);
+    }
+}
@@ -0,0 +1,70 @@
+package ru.vvdev.yamap.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Background thread for parsing props and building geometries. Results are delivered
+// on the main thread unless the job was cancelled or the task failed, so a view that
+// starts a new job for a newer value only has to cancel the previous one
+public class GeometryWorker {
+    // props with fewer array elements are handled synchronously, a thread hop costs more
+    public static final int MIN_ASYNC_SIZE = 2000;
+
+    public interface Task<T> {
+        T run();
+    }
+
+    public static class Job {
+        private volatile boolean cancelled = false;
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public static <T> Job submit(final Task<T> task, final Callback<T> callback) {
+        final Job job = new Job();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (job.isCancelled()) {
+                    return;
+                }
+                final T result;
+                try {
+                    result = task.run();
+                } catch (RuntimeException e) {
+                    // a malformed prop must not take the app down, the view keeps its
+                    // previous geometry since the callback is not invoked
+                    e.printStackTrace();
+                    return;
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!job.isCancelled()) {
+                            callback.invoke(result);
+                        }
+                    }
+                });
+            }
+        });
+        return job;
+    }
+
+    public static void cancel(Job job) {
+        if (job != null) {
+            job.cancel();
+        }
+    }
+}
@@ -5,15 +5,90 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.LruCache;
 
-import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.Field;
-import java.net.URL;
-import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ImageLoader {
+    // 1/8 of the heap available to the app, in bytes
+    private static final int MAX_CACHE_SIZE = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+
+    private static final LruCache<String, Bitmap> cache = new LruCache<String, Bitmap>(MAX_CACHE_SIZE) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+
+        // a replaced or explicitly removed bitmap must not be handed out by the registry any more.
+        // Evicted ones are still valid, their providers keep them alive anyway
+        @Override
+        protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+            if (!evicted) {
+                ImageProviderRegistry.invalidate(key);
+            }
+        }
+    };
+
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+
+    private static final int DEFAULT_CONCURRENT_LOADS = 4;
+    private static final int MAX_QUEUE_SIZE = 512;
+    private static final int MAX_DEFERRED_SIZE = 2048;
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            DEFAULT_CONCURRENT_LOADS,
+            DEFAULT_CONCURRENT_LOADS,
+            30,
+            TimeUnit.SECONDS,
+            new PriorityBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "yamap-image-loader");
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }
+            });
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    // loads that are queued, deferred or in progress, by cache key
+    private static final HashMap<String, LoadTask> pending = new HashMap<>();
+    // loads that did not fit into the queue, most urgent first, queued again as soon as
+    // there is room. Guarded by pending, like everything else about the tasks
+    private static final TreeSet<LoadTask> deferred = new TreeSet<>();
+
+    private static final long MAX_DISK_CACHE_SIZE = 50 * 1024 * 1024;
+    private static final String DISK_CACHE_DIR = "yamap-icons";
+    private static DiskImageCache diskCache = null;
+
+    // remote urls already checked against the server during this process lifetime
+    private static final Set<String> revalidated = Collections.synchronizedSet(new HashSet<String>());
+    // content version of every url that has changed on the server, part of the cache key
+    private static final ConcurrentHashMap<String, Integer> versions = new ConcurrentHashMap<>();
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
     private static int getResId(String resName, Class<?> c) {
 
         try {
@@ -25,40 +100,362 @@ public class ImageLoader {
         }
     }
 
-    private static Bitmap getBitmap(final Context context, final String url) throws IOException {
-        if (url.contains("http://") || url.contains("https://")) {
-            URL aURL = new URL(url);
-            URLConnection conn = aURL.openConnection();
-            conn.connect();
-            InputStream is = conn.getInputStream();
-            BufferedInputStream bis = new BufferedInputStream(is);
-            Bitmap bitmap = BitmapFactory.decodeStream(bis);
-            bis.close();
-            is.close();
-            return bitmap;
+    public static synchronized DiskImageCache getDiskCache(Context context) {
+        if (diskCache == null) {
+            File dir = new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIR);
+            diskCache = new DiskImageCache(dir, MAX_DISK_CACHE_SIZE);
+        }
+        return diskCache;
+    }
+
+    private static boolean isRemote(String url) {
+        return url.contains("http://") || url.contains("https://");
+    }
+
+    private static Bitmap getBitmap(final Context context, final String url, final DecodeOptions options) throws IOException {
+        BitmapFactory.Options bitmapOptions = new BitmapFactory.Options();
+        bitmapOptions.inPreferredConfig = options.config;
+        if (isRemote(url)) {
+            DiskImageCache disk = getDiskCache(context);
+            byte[] data = disk.get(url);
+            if (data == null) {
+                data = disk.fetch(url);
+                revalidated.add(url);
+            }
+            if (options.isSized()) {
+                bitmapOptions.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(data, 0, data.length, bitmapOptions);
+                bitmapOptions.inSampleSize = calculateInSampleSize(bitmapOptions, options.width, options.height);
+                bitmapOptions.inJustDecodeBounds = false;
+            }
+            return fitToSize(BitmapFactory.decodeByteArray(data, 0, data.length, bitmapOptions), options);
         }
         int id = context.getResources().getIdentifier(url, "drawable", context.getPackageName());
-        return BitmapFactory.decodeResource(context.getResources(), id);//getResId(url, R.drawable.class));
+        if (options.isSized()) {
+            bitmapOptions.inJustDecodeBounds = true;
+            BitmapFactory.decodeResource(context.getResources(), id, bitmapOptions);
+            bitmapOptions.inSampleSize = calculateInSampleSize(bitmapOptions, options.width, options.height);
+            bitmapOptions.inJustDecodeBounds = false;
+        }
+        return fitToSize(BitmapFactory.decodeResource(context.getResources(), id, bitmapOptions), options);//getResId(url, R.drawable.class));
     }
 
-    public static void DownloadImageBitmap(final Context context, final String url, final Callback<Bitmap> cb) {
-        new Thread() {
+    // inSampleSize only divides by powers of two, the rest is scaled to fit the target box keeping proportions
+    private static Bitmap fitToSize(Bitmap bitmap, DecodeOptions options) {
+        if (bitmap == null || !options.isSized()) {
+            return bitmap;
+        }
+        float ratio = Float.MAX_VALUE;
+        if (options.width > 0) {
+            ratio = Math.min(ratio, (float) options.width / bitmap.getWidth());
+        }
+        if (options.height > 0) {
+            ratio = Math.min(ratio, (float) options.height / bitmap.getHeight());
+        }
+        if (ratio >= 1) {
+            return bitmap;
+        }
+        int width = Math.max(1, Math.round(bitmap.getWidth() * ratio));
+        int height = Math.max(1, Math.round(bitmap.getHeight() * ratio));
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    // largest power of two that keeps both sides at least as big as requested
+    private static int calculateInSampleSize(BitmapFactory.Options bounds, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        int width = bounds.outWidth;
+        int height = bounds.outHeight;
+        if (width <= 0 || height <= 0) {
+            return inSampleSize;
+        }
+        while ((reqWidth <= 0 || width / (inSampleSize * 2) >= reqWidth)
+                && (reqHeight <= 0 || height / (inSampleSize * 2) >= reqHeight)) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    // the content version makes a changed icon a new key for the memory cache, the
+    // provider registry and MapKit's own texture cache, which is keyed by provider id
+    public static String cacheKey(String url, DecodeOptions options) {
+        Integer version = versions.get(url);
+        return url + "|" + options.key() + "|" + (version != null ? version : 0);
+    }
+
+    public static Request DownloadImageBitmap(final Context context, final String url, final Callback<Bitmap> cb) {
+        return DownloadImageBitmap(context, url, DecodeOptions.DEFAULT, PRIORITY_NORMAL, cb);
+    }
+
+    public static Request DownloadImageBitmap(final Context context, final String url, int priority, final Callback<Bitmap> cb) {
+        return DownloadImageBitmap(context, url, DecodeOptions.DEFAULT, priority, cb);
+    }
+
+    // cb gets null when the load is dropped because too many loads are waiting, the
+    // caller may request the image again later
+    public static Request DownloadImageBitmap(final Context context, final String url, DecodeOptions options, int priority, final Callback<Bitmap> cb) {
+        final String key = cacheKey(url, options);
+        Bitmap cached = cache.get(key);
+        Request request = new Request(cb);
+        if (cached != null) {
+            cb.invoke(cached);
+            return request;
+        }
+        synchronized (pending) {
+            LoadTask task = pending.get(key);
+            if (task != null) {
+                request.task = task;
+                task.requests.add(request);
+                if (priority > task.priority && !task.started) {
+                    // re-queue so the more urgent waiter does not wait behind the old priority
+                    if (executor.remove(task)) {
+                        task.priority = priority;
+                        executor.execute(task);
+                    } else if (deferred.remove(task)) {
+                        task.priority = priority;
+                        enqueue(task);
+                    }
+                }
+                return request;
+            }
+            task = new LoadTask(context.getApplicationContext(), url, options, key, priority);
+            request.task = task;
+            task.requests.add(request);
+            pending.put(key, task);
+            enqueue(task);
+        }
+        return request;
+    }
+
+    // keeps the queue bounded. When it is full the least urgent load (possibly the new
+    // one) is deferred instead of dropped, so its requests still get the image later
+    private static void enqueue(LoadTask task) {
+        if (executor.getQueue().size() >= MAX_QUEUE_SIZE) {
+            LoadTask victim = task;
+            for (Runnable r : executor.getQueue()) {
+                LoadTask queued = (LoadTask) r;
+                if (queued.compareTo(victim) > 0) {
+                    victim = queued;
+                }
+            }
+            if (victim == task) {
+                defer(task);
+                return;
+            }
+            // a victim that has just been taken by a worker has made room by itself
+            if (executor.remove(victim)) {
+                defer(victim);
+            }
+        }
+        executor.execute(task);
+    }
+
+    // the deferred loads are bounded too, above the limit the least urgent one is
+    // dropped and its requests are told so
+    private static void defer(LoadTask task) {
+        deferred.add(task);
+        if (deferred.size() <= MAX_DEFERRED_SIZE) {
+            return;
+        }
+        LoadTask dropped = deferred.pollLast();
+        pending.remove(dropped.key);
+        final ArrayList<Request> waiting = new ArrayList<>(dropped.requests);
+        mainHandler.post(new Runnable() {
             @Override
             public void run() {
-                try {
-                    final Bitmap bitmap = getBitmap(context, url);
-                    if (bitmap != null) {
-                        new Handler(Looper.getMainLooper()).post(new Runnable() {
-                            @Override
-                            public void run() {
-                                cb.invoke(bitmap);
+                for (Request request : waiting) {
+                    if (!request.cancelled) {
+                        request.cb.invoke(null);
+                    }
+                }
+            }
+        });
+    }
+
+    // called with the pending lock held whenever a load finishes
+    private static void resumeDeferred() {
+        while (!deferred.isEmpty() && executor.getQueue().size() < MAX_QUEUE_SIZE) {
+            executor.execute(deferred.pollFirst());
+        }
+    }
+
+    public static void setMaxConcurrentLoads(int count) {
+        int size = Math.max(1, count);
+        if (size > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    public static int getMaxConcurrentLoads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    // target size in pixels (0 - keep the source size) and pixel format of a decoded bitmap
+    public static class DecodeOptions {
+        public static final DecodeOptions DEFAULT = new DecodeOptions(0, 0, Bitmap.Config.ARGB_8888);
+
+        public final int width;
+        public final int height;
+        public final Bitmap.Config config;
+
+        public DecodeOptions(int width, int height, Bitmap.Config config) {
+            this.width = Math.max(0, width);
+            this.height = Math.max(0, height);
+            this.config = config != null ? config : Bitmap.Config.ARGB_8888;
+        }
+
+        boolean isSized() {
+            return width > 0 || height > 0;
+        }
+
+        String key() {
+            return width + "x" + height + ":" + config.name();
+        }
+    }
+
+    // handle of a single DownloadImageBitmap call. Cancelling it drops the callback,
+    // and the load itself when nobody else is waiting for the same image
+    public static class Request {
+        private final Callback<Bitmap> cb;
+        private LoadTask task = null;
+        private volatile boolean cancelled = false;
+
+        private Request(Callback<Bitmap> cb) {
+            this.cb = cb;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            if (task == null) {
+                return;
+            }
+            synchronized (pending) {
+                task.requests.remove(this);
+                if (task.requests.isEmpty() && !task.started && (executor.remove(task) || deferred.remove(task))) {
+                    pending.remove(task.key);
+                }
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static class LoadTask implements Runnable, Comparable<LoadTask> {
+        private final Context context;
+        private final String url;
+        private final DecodeOptions options;
+        private final String key;
+        private final long order = sequence.getAndIncrement();
+        private final ArrayList<Request> requests = new ArrayList<>();
+        private int priority;
+        private boolean started = false;
+
+        LoadTask(Context context, String url, DecodeOptions options, String key, int priority) {
+            this.context = context;
+            this.url = url;
+            this.options = options;
+            this.key = key;
+            this.priority = priority;
+        }
+
+        // higher priority first, then in order of arrival
+        @Override
+        public int compareTo(LoadTask other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return order < other.order ? -1 : (order > other.order ? 1 : 0);
+        }
+
+        @Override
+        public void run() {
+            synchronized (pending) {
+                if (pending.get(key) != this) {
+                    return;
+                }
+                started = true;
+            }
+            Bitmap bitmap = null;
+            try {
+                bitmap = getBitmap(context, url, options);
+                if (bitmap != null) {
+                    cache.put(key, bitmap);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            final Bitmap result = bitmap;
+            final ArrayList<Request> waiting;
+            synchronized (pending) {
+                pending.remove(key);
+                waiting = new ArrayList<>(requests);
+                resumeDeferred();
+            }
+            if (result != null && !waiting.isEmpty()) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (Request request : waiting) {
+                            if (!request.cancelled) {
+                                request.cb.invoke(result);
                             }
-                        });
+                        }
+                    }
+                });
+            }
+            if (result != null && isRemote(url)) {
+                revalidate(context, url);
+            }
+        }
+    }
+
+    // icons served from disk are shown right away and checked with ETag/Last-Modified
+    // afterwards, once per process; a changed icon is picked up by the next load
+    private static void revalidate(Context context, String url) {
+        if (!revalidated.add(url)) {
+            return;
+        }
+        try {
+            if (getDiskCache(context).revalidate(url) != null) {
+                Integer version = versions.get(url);
+                versions.put(url, version != null ? version + 1 : 1);
+                // every decoded variant of the url is stale now, markers pick up the new
+                // version the next time their icon is bound
+                ImageProviderRegistry.invalidateSource(url);
+                for (String key : cache.snapshot().keySet()) {
+                    if (key.startsWith(url + "|")) {
+                        cache.remove(key);
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
                 }
             }
-        }.start();
+        } catch (IOException e) {
+            // offline: keep serving the stored copy
+            revalidated.remove(url);
+        }
+    }
+
+    public static int getCacheHitCount() {
+        return cache.hitCount();
+    }
+
+    public static int getCacheMissCount() {
+        return cache.missCount();
+    }
+
+    public static int getCacheEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    public static void clearCache() {
+        cache.evictAll();
     }
 }
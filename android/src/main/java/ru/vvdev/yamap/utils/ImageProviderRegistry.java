@@ -0,0 +1,107 @@
+package ru.vvdev.yamap.utils;
+
+import android.graphics.Bitmap;
+
+import com.yandex.runtime.image.ImageProvider;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+// Process-wide ImageProviders shared by all markers of all maps. Providers are
+// keyed by ImageLoader cache keys (source, decode options and content version)
+// and counted by the markers using them. Holders keep the handle they got, so
+// releasing an invalidated entry never touches a newer one with the same key
+public class ImageProviderRegistry {
+    public static class Handle {
+        private final String key;
+        private final ImageProvider provider;
+        // bitmap size in pixels, for hit tests
+        private final int width;
+        private final int height;
+        private int refs = 0;
+
+        private Handle(String key, Bitmap bitmap) {
+            this.key = key;
+            // a stable id lets MapKit keep a single texture for the icon, the version
+            // in the key gives a changed icon a new one
+            this.provider = ImageProvider.fromBitmap(bitmap, true, key);
+            this.width = bitmap.getWidth();
+            this.height = bitmap.getHeight();
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public ImageProvider getProvider() {
+            return provider;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    private static final HashMap<String, Handle> entries = new HashMap<>();
+
+    // provider for the key, created from the bitmap if nobody holds one yet. Every
+    // acquire must be paired with a release of the returned handle
+    public static synchronized Handle acquire(String key, Bitmap bitmap) {
+        Handle entry = entries.get(key);
+        if (entry == null) {
+            entry = new Handle(key, bitmap);
+            entries.put(key, entry);
+        }
+        entry.refs++;
+        return entry;
+    }
+
+    // shared provider if one exists, without loading anything
+    public static synchronized Handle acquireExisting(String key) {
+        Handle entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.refs++;
+        return entry;
+    }
+
+    public static synchronized void release(Handle entry) {
+        if (entry == null) {
+            return;
+        }
+        // an invalidated entry is no longer in the map, a newer one may be
+        if (--entry.refs <= 0 && entries.get(entry.key) == entry) {
+            entries.remove(entry.key);
+        }
+    }
+
+    // forgets the provider of a stale key. Holders keep showing it until they release
+    // their handle, nobody acquires it again
+    public static synchronized void invalidate(String key) {
+        entries.remove(key);
+    }
+
+    // every variant of an icon source
+    public static synchronized void invalidateSource(String source) {
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(source + "|")) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public static synchronized int size() {
+        return entries.size();
+    }
+
+    public static synchronized int getRefCount(String key) {
+        Handle entry = entries.get(key);
+        return entry != null ? entry.refs : 0;
+    }
+}
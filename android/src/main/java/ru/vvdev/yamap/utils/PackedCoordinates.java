@@ -0,0 +1,90 @@
+package ru.vvdev.yamap.utils;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.yandex.mapkit.geometry.Point;
+
+import java.util.ArrayList;
+
+// Coordinates packed as [lat0, lon0, lat1, lon1, ...], read from a flat JS array or
+// an encoded polyline string instead of one {lat, lon} map per point
+public class PackedCoordinates {
+    // array of {lat, lon} maps
+    public static double[] fromPointMaps(ReadableArray array) {
+        int size = array != null ? array.size() : 0;
+        double[] coordinates = new double[size * 2];
+        int count = 0;
+        for (int i = 0; i < size; ++i) {
+            ReadableMap map = array.getMap(i);
+            if (map != null) {
+                coordinates[count++] = map.getDouble("lat");
+                coordinates[count++] = map.getDouble("lon");
+            }
+        }
+        return trim(coordinates, count);
+    }
+
+    public static double[] fromArray(ReadableArray array) {
+        double[] coordinates = new double[array != null ? array.size() & ~1 : 0];
+        for (int i = 0; i < coordinates.length; ++i) {
+            coordinates[i] = array.getDouble(i);
+        }
+        return coordinates;
+    }
+
+    // encoded polyline algorithm format, precision is the number of decimal digits (5 by default)
+    public static double[] decode(String encoded, int precision) {
+        if (encoded == null) {
+            return new double[0];
+        }
+        double factor = Math.pow(10, precision);
+        int length = encoded.length();
+        // every coordinate takes at least one character
+        double[] coordinates = new double[length & ~1];
+        int count = 0;
+        int index = 0;
+        long lat = 0;
+        long lon = 0;
+        long[] value = new long[2];
+        while (index < length) {
+            for (int k = 0; k < 2; ++k) {
+                long result = 0;
+                int shift = 0;
+                int b;
+                do {
+                    if (index >= length) {
+                        // truncated input, keep what was decoded
+                        return trim(coordinates, count);
+                    }
+                    b = encoded.charAt(index++) - 63;
+                    result |= (long) (b & 0x1f) << shift;
+                    shift += 5;
+                } while (b >= 0x20);
+                value[k] = (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+            }
+            lat += value[0];
+            lon += value[1];
+            coordinates[count++] = lat / factor;
+            coordinates[count++] = lon / factor;
+        }
+        return trim(coordinates, count);
+    }
+
+    public static ArrayList<Point> toPoints(double[] coordinates) {
+        int count = coordinates.length / 2;
+        ArrayList<Point> points = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            points.add(new Point(coordinates[i * 2], coordinates[i * 2 + 1]));
+        }
+        return points;
+    }
+
+    private static double[] trim(double[] coordinates, int count) {
+        if (count == coordinates.length) {
+            return coordinates;
+        }
+        double[] result = new double[count];
+        System.arraycopy(coordinates, 0, result, 0, count);
+        return result;
+    }
+}
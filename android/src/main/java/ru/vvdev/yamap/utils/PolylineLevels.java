@@ -0,0 +1,176 @@
+package ru.vvdev.yamap.utils;
+
+import com.yandex.mapkit.geometry.Polyline;
+
+// Simplified lines of every zoom bucket below the top one for a polyline that grows at
+// the end and shrinks at the start, like a live track. The last source points form a
+// window that is simplified again on every append, so points appended one by one are
+// dropped like any others. When the window outgrows MAX_WINDOW the part before its most
+// important middle point is committed to the levels, so an append costs O(window) and
+// not a run over the whole line. Points are identified by their index in the source
+// line counted from its original start, which trims do not shift
+public class PolylineLevels {
+    private static final int MAX_WINDOW = 256;
+
+    private static class Level {
+        final CoordinateBuffer points = new CoordinateBuffer();
+        // source index of every point
+        int[] indices = new int[32];
+        int head = 0;
+
+        int getIndex(int i) {
+            return indices[head + i];
+        }
+
+        void add(double lat, double lon, int index) {
+            int size = points.size();
+            if (head + size == indices.length) {
+                int[] grown = new int[Math.max(indices.length, size * 2)];
+                System.arraycopy(indices, head, grown, 0, size);
+                indices = grown;
+                head = 0;
+            }
+            indices[head + size] = index;
+            points.append(lat, lon);
+        }
+
+        // drops the points from the given source index on
+        void truncate(int index) {
+            int size = points.size();
+            int keep = size;
+            while (keep > 0 && getIndex(keep - 1) >= index) {
+                --keep;
+            }
+            points.trimEnd(size - keep);
+        }
+
+        // the line has to start at the first source point. Points before it are dropped,
+        // the last of them is moved onto it unless that point is in the level already
+        void trimTo(int first, double lat, double lon) {
+            int size = points.size();
+            int drop = 0;
+            while (drop < size && getIndex(drop) < first) {
+                ++drop;
+            }
+            if (drop == 0) {
+                return;
+            }
+            if (drop < size && getIndex(drop) == first) {
+                points.trimStart(drop);
+                head += drop;
+                return;
+            }
+            points.trimStart(drop - 1);
+            head += drop - 1;
+            points.setFirst(lat, lon);
+            indices[head] = first;
+        }
+    }
+
+    private final float tolerance;
+    private final Level[] levels;
+    // source indices of the first point and past the last point
+    private int first;
+    private int end;
+    // source points from windowStart to end, not committed to the levels yet
+    private final CoordinateBuffer window = new CoordinateBuffer();
+    private int windowStart;
+
+    // tolerance in pixels, first is the source index of the first point that will be appended
+    public PolylineLevels(float tolerance, int first) {
+        this.tolerance = tolerance;
+        this.first = first;
+        this.end = first;
+        this.windowStart = first;
+        levels = new Level[PolylineSimplifier.getBucketCount() - 1];
+        for (int i = 0; i < levels.length; ++i) {
+            levels[i] = new Level();
+        }
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    // line of the bucket, null for the top bucket, which draws the source points. MapKit
+    // copies the points, so the line is built on every call and does not follow later changes
+    public Polyline getLevel(int bucket) {
+        return bucket < levels.length ? new Polyline(levels[bucket].points.asPoints()) : null;
+    }
+
+    // [lat0, lon0, lat1, lon1, ...] appended to the end of the source line
+    public void append(double[] coordinates) {
+        int count = coordinates.length / 2;
+        if (count == 0) {
+            return;
+        }
+        window.append(coordinates);
+        end += count;
+        double[] part = window.toArray();
+        double[] importance = PolylineSimplifier.getImportance(part);
+        int size = window.size();
+        if (size > MAX_WINDOW) {
+            // the split point is kept in every level, so the part before it does not
+            // change any more. It is taken from the middle of the last MAX_WINDOW points,
+            // which leaves enough of the window for the next appends to be simplified with
+            int split = size - MAX_WINDOW * 3 / 4;
+            for (int i = split + 1; i <= size - MAX_WINDOW / 4; ++i) {
+                if (importance[i] > importance[split]) {
+                    split = i;
+                }
+            }
+            apply(part, importance, split);
+            window.trimStart(split);
+            windowStart += split;
+            part = window.toArray();
+            importance = PolylineSimplifier.getImportance(part);
+        }
+        apply(part, importance, window.size());
+    }
+
+    // replaces the window part of the levels by the first count window points
+    private void apply(double[] part, double[] importance, int count) {
+        for (int bucket = 0; bucket < levels.length; ++bucket) {
+            Level level = levels[bucket];
+            level.truncate(windowStart);
+            double limit = PolylineSimplifier.getLimit(bucket, tolerance);
+            for (int i = 0; i < count; ++i) {
+                if (importance[i] > limit) {
+                    level.add(part[i * 2], part[i * 2 + 1], windowStart + i);
+                }
+            }
+        }
+    }
+
+    // the source line now starts at the given index, lat and lon are of its new first point
+    public void trimTo(int _first, double lat, double lon) {
+        if (_first <= first) {
+            return;
+        }
+        first = _first;
+        if (first >= end) {
+            end = first;
+            windowStart = first;
+            window.clear();
+            for (Level level : levels) {
+                level.points.clear();
+                level.head = 0;
+            }
+            return;
+        }
+        for (Level level : levels) {
+            level.trimTo(first, lat, lon);
+        }
+        if (first > windowStart) {
+            // the window lost its start, what is left of it is simplified again
+            window.trimStart(first - windowStart);
+            windowStart = first;
+            double[] part = window.toArray();
+            apply(part, PolylineSimplifier.getImportance(part), window.size());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ru.vvdev.yamap.utils;
+
+// Douglas-Peucker simplification of a polyline for a set of zoom buckets. The
+// algorithm runs once and records for every point the largest tolerance at which
+// it is still kept, so each bucket is a plain filter over the points, see PolylineLevels
+public class PolylineSimplifier {
+    private static final double TILE_SIZE = 256;
+    // buckets cover ZOOM_STEP zoom levels each, above MAX_ZOOM the raw points are used
+    public static final int ZOOM_STEP = 2;
+    public static final int MAX_ZOOM = 20;
+
+    public static int getBucket(float zoom) {
+        return Math.max(0, Math.min((int) Math.floor(zoom), MAX_ZOOM)) / ZOOM_STEP;
+    }
+
+    public static int getBucketCount() {
+        return MAX_ZOOM / ZOOM_STEP + 1;
+    }
+
+    // largest tolerance in mercator units at which a point is still drawn in the bucket,
+    // tolerance in pixels. The error stays below it up to the top zoom of the bucket
+    static double getLimit(int bucket, float tolerance) {
+        return tolerance / (TILE_SIZE * Math.pow(2, (bucket + 1) * ZOOM_STEP));
+    }
+
+    // largest tolerance in mercator units at which each point of [lat0, lon0, lat1, lon1, ...]
+    // survives simplification
+    static double[] getImportance(double[] coordinates) {
+        int count = coordinates.length / 2;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; ++i) {
+            xs[i] = GeometryUtils.lonToX(coordinates[i * 2 + 1]);
+            ys[i] = GeometryUtils.latToY(coordinates[i * 2]);
+        }
+        double[] importance = new double[count];
+        if (count == 0) {
+            return importance;
+        }
+        importance[0] = Double.POSITIVE_INFINITY;
+        importance[count - 1] = Double.POSITIVE_INFINITY;
+
+        // explicit stack of (first, last, parent importance), tracks can be too long for recursion
+        int[] firsts = new int[64];
+        int[] lasts = new int[64];
+        double[] parents = new double[64];
+        firsts[0] = 0;
+        lasts[0] = count - 1;
+        parents[0] = Double.POSITIVE_INFINITY;
+        int top = 1;
+        while (top > 0) {
+            --top;
+            int first = firsts[top];
+            int last = lasts[top];
+            double parent = parents[top];
+            if (last - first < 2) {
+                continue;
+            }
+            int index = -1;
+            double max = -1;
+            for (int i = first + 1; i < last; ++i) {
+                double d = segmentDistance(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (d > max) {
+                    max = d;
+                    index = i;
+                }
+            }
+            // a point never outlives the split that made it reachable
+            double value = Math.min(max, parent);
+            importance[index] = value;
+            if (top + 2 > firsts.length) {
+                firsts = grow(firsts);
+                lasts = grow(lasts);
+                parents = grow(parents);
+            }
+            firsts[top] = first;
+            lasts[top] = index;
+            parents[top] = value;
+            ++top;
+            firsts[top] = index;
+            lasts[top] = last;
+            parents[top] = value;
+            ++top;
+        }
+        return importance;
+    }
+
+    static double segmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? ((px - ax) * dx + (py - ay) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        double x = ax + t * dx - px;
+        double y = ay + t * dy - py;
+        return Math.sqrt(x * x + y * y);
+    }
+
+    private static int[] grow(int[] array) {
+        int[] result = new int[array.length * 2];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+
+    private static double[] grow(double[] array) {
+        double[] result = new double[array.length * 2];
+        System.arraycopy(array, 0, result, 0, array.length);
+        return result;
+    }
+}
@@ -0,0 +1,197 @@
+package ru.vvdev.yamap.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// Quadtree of bounding boxes in lat/lon degrees. Every item is stored in the smallest
+// node that fully contains its box, so boxes of any size are supported and an item
+// can be moved or removed without rebuilding the tree
+public class QuadTree<T> {
+    private static final int MAX_DEPTH = 18;
+    private static final int SPLIT_THRESHOLD = 16;
+
+    private static class Entry<T> {
+        final T item;
+        double minLat;
+        double minLon;
+        double maxLat;
+        double maxLon;
+        Node<T> node;
+
+        Entry(T item) {
+            this.item = item;
+        }
+
+        boolean intersects(double _minLat, double _minLon, double _maxLat, double _maxLon) {
+            return minLat <= _maxLat && maxLat >= _minLat && minLon <= _maxLon && maxLon >= _minLon;
+        }
+    }
+
+    private static class Node<T> {
+        final double minLat;
+        final double minLon;
+        final double maxLat;
+        final double maxLon;
+        final int depth;
+        final ArrayList<Entry<T>> entries = new ArrayList<>();
+        Node<T>[] children = null;
+        int size = 0;
+
+        Node(double minLat, double minLon, double maxLat, double maxLon, int depth) {
+            this.minLat = minLat;
+            this.minLon = minLon;
+            this.maxLat = maxLat;
+            this.maxLon = maxLon;
+            this.depth = depth;
+        }
+
+        boolean contains(Entry<T> e) {
+            return e.minLat >= minLat && e.maxLat <= maxLat && e.minLon >= minLon && e.maxLon <= maxLon;
+        }
+
+        boolean intersects(double _minLat, double _minLon, double _maxLat, double _maxLon) {
+            return minLat <= _maxLat && maxLat >= _minLat && minLon <= _maxLon && maxLon >= _minLon;
+        }
+
+        @SuppressWarnings("unchecked")
+        void split() {
+            double midLat = (minLat + maxLat) / 2;
+            double midLon = (minLon + maxLon) / 2;
+            children = new Node[] {
+                    new Node<T>(minLat, minLon, midLat, midLon, depth + 1),
+                    new Node<T>(minLat, midLon, midLat, maxLon, depth + 1),
+                    new Node<T>(midLat, minLon, maxLat, midLon, depth + 1),
+                    new Node<T>(midLat, midLon, maxLat, maxLon, depth + 1),
+            };
+        }
+    }
+
+    private final Node<T> root = new Node<>(-90, -180, 90, 180, 0);
+    private final HashMap<T, Entry<T>> entries = new HashMap<>();
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean contains(T item) {
+        return entries.containsKey(item);
+    }
+
+    // inserts the item or moves it to the new box
+    public void put(T item, double minLat, double minLon, double maxLat, double maxLon) {
+        Entry<T> entry = entries.get(item);
+        if (entry != null) {
+            removeFromNode(entry);
+        } else {
+            entry = new Entry<>(item);
+            entries.put(item, entry);
+        }
+        entry.minLat = Math.max(-90, Math.min(minLat, maxLat));
+        entry.maxLat = Math.min(90, Math.max(minLat, maxLat));
+        entry.minLon = Math.max(-180, Math.min(minLon, maxLon));
+        entry.maxLon = Math.min(180, Math.max(minLon, maxLon));
+        insert(root, entry);
+    }
+
+    public void remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry != null) {
+            removeFromNode(entry);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        root.entries.clear();
+        root.children = null;
+        root.size = 0;
+    }
+
+    public List<T> query(double minLat, double minLon, double maxLat, double maxLon) {
+        List<T> result = new ArrayList<>();
+        query(root, minLat, minLon, maxLat, maxLon, result);
+        return result;
+    }
+
+    private void query(Node<T> node, double minLat, double minLon, double maxLat, double maxLon, List<T> result) {
+        if (node.size == 0 || !node.intersects(minLat, minLon, maxLat, maxLon)) {
+            return;
+        }
+        for (Entry<T> entry : node.entries) {
+            if (entry.intersects(minLat, minLon, maxLat, maxLon)) {
+                result.add(entry.item);
+            }
+        }
+        if (node.children != null) {
+            for (Node<T> child : node.children) {
+                query(child, minLat, minLon, maxLat, maxLon, result);
+            }
+        }
+    }
+
+    private void insert(Node<T> node, Entry<T> entry) {
+        while (true) {
+            node.size++;
+            if (node.children == null && node.entries.size() >= SPLIT_THRESHOLD && node.depth < MAX_DEPTH) {
+                node.split();
+                // push down what fits into a child
+                ArrayList<Entry<T>> kept = new ArrayList<>();
+                for (Entry<T> e : node.entries) {
+                    Node<T> child = childFor(node, e);
+                    if (child != null) {
+                        child.entries.add(e);
+                        child.size++;
+                        e.node = child;
+                    } else {
+                        kept.add(e);
+                    }
+                }
+                node.entries.clear();
+                node.entries.addAll(kept);
+            }
+            Node<T> child = node.children != null ? childFor(node, entry) : null;
+            if (child == null) {
+                node.entries.add(entry);
+                entry.node = node;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    private Node<T> childFor(Node<T> node, Entry<T> entry) {
+        for (Node<T> child : node.children) {
+            if (child.contains(entry)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private void removeFromNode(Entry<T> entry) {
+        Node<T> node = entry.node;
+        node.entries.remove(entry);
+        entry.node = null;
+        // sizes are kept along the path from the root to the node
+        Node<T> current = root;
+        while (current != null) {
+            current.size--;
+            if (current == node) {
+                break;
+            }
+            current = current.children != null ? childContaining(current, node) : null;
+        }
+    }
+
+    private Node<T> childContaining(Node<T> parent, Node<T> node) {
+        double lat = (node.minLat + node.maxLat) / 2;
+        double lon = (node.minLon + node.maxLon) / 2;
+        for (Node<T> child : parent.children) {
+            if (lat >= child.minLat && lat <= child.maxLat && lon >= child.minLon && lon <= child.maxLon) {
+                return child;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,206 @@
+package ru.vvdev.yamap.utils;
+
+import java.util.List;
+
+// Lengths and a segment quadtree of a polyline kept in a CoordinateBuffer, updated
+// incrementally as the line is appended to and trimmed. Positions are a segment index
+// from the current start and a fraction of that segment, like MapKit's PolylinePosition
+public class RouteIndex {
+    // first search box, in degrees
+    private static final double INITIAL_RADIUS = 0.0005;
+
+    public static class Position {
+        public final int segment;
+        public final double fraction;
+        // meters from the start of the route
+        public final double distance;
+
+        Position(int segment, double fraction, double distance) {
+            this.segment = segment;
+            this.fraction = fraction;
+            this.distance = distance;
+        }
+    }
+
+    // the indexed line, read live. It only grows at the end and shrinks at the start,
+    // every change is reported through onAppended and onTrimmed
+    private final CoordinateBuffer points;
+    private int count = 0;
+    // distance from the original start of the line to every point, in meters, from head on
+    private double[] distances = new double[32];
+    private int head = 0;
+    // points trimmed since the index was built, segments in the tree are keyed by
+    // their index counted from the original start
+    private int trimmed = 0;
+    private final QuadTree<Integer> segments = new QuadTree<>();
+
+    public RouteIndex(CoordinateBuffer points) {
+        this.points = points;
+        onAppended();
+    }
+
+    // indexes the points appended since the last call, O(appended points)
+    public void onAppended() {
+        int size = points.size();
+        ensureCapacity(size);
+        for (int i = count; i < size; ++i) {
+            if (i == 0) {
+                distances[head] = 0;
+                continue;
+            }
+            double lat0 = points.getLatitude(i - 1);
+            double lon0 = points.getLongitude(i - 1);
+            double lat1 = points.getLatitude(i);
+            double lon1 = points.getLongitude(i);
+            distances[head + i] = distances[head + i - 1] + GeometryUtils.distance(lat0, lon0, lat1, lon1);
+            segments.put(trimmed + i - 1, Math.min(lat0, lat1), Math.min(lon0, lon1), Math.max(lat0, lat1), Math.max(lon0, lon1));
+        }
+        count = size;
+    }
+
+    // the line has dropped n points from the start, O(n)
+    public void onTrimmed(int n) {
+        n = Math.max(0, Math.min(n, count));
+        // segment i starts at point i, the first n segments lose their start
+        for (int i = 0; i < n; ++i) {
+            segments.remove(trimmed + i);
+        }
+        trimmed += n;
+        head += n;
+        count -= n;
+    }
+
+    private void ensureCapacity(int size) {
+        if (head + size <= distances.length) {
+            return;
+        }
+        // like CoordinateBuffer, the trimmed head is reclaimed before the array grows
+        if (size <= distances.length && head >= distances.length / 2) {
+            System.arraycopy(distances, head, distances, 0, count);
+        } else {
+            double[] grown = new double[Math.max(size, distances.length * 2)];
+            System.arraycopy(distances, head, grown, 0, count);
+            distances = grown;
+        }
+        head = 0;
+    }
+
+    // meters from the current start of the line
+    private double distanceAt(int i) {
+        return distances[head + i] - distances[head];
+    }
+
+    public int getSegmentCount() {
+        return Math.max(0, count - 1);
+    }
+
+    public double getLength() {
+        return count > 0 ? distanceAt(count - 1) : 0;
+    }
+
+    // position at the given distance from the start, clamped to the route
+    public Position positionAt(double distance) {
+        if (getSegmentCount() == 0) {
+            return null;
+        }
+        distance = Math.max(0, Math.min(distance, getLength()));
+        int lo = 0;
+        int hi = getSegmentCount() - 1;
+        // last segment starting at or before the distance
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (distanceAt(mid) <= distance) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        double length = distanceAt(lo + 1) - distanceAt(lo);
+        double fraction = length > 0 ? (distance - distanceAt(lo)) / length : 0;
+        return new Position(lo, Math.min(1, fraction), distance);
+    }
+
+    // nearest point of the route. The segment quadtree is searched in a growing box
+    // around the point, so only segments close to it are measured
+    public Position project(double lat, double lon) {
+        if (getSegmentCount() == 0) {
+            return null;
+        }
+        double scale = Math.max(0.01, Math.cos(Math.toRadians(lat)));
+        double radius = INITIAL_RADIUS;
+        while (true) {
+            List<Integer> candidates = query(lat, lon, radius, scale);
+            if (!candidates.isEmpty()) {
+                double best = Double.MAX_VALUE;
+                for (int segment : candidates) {
+                    best = Math.min(best, planarDistance(segment, lat, lon, scale)[0]);
+                }
+                // a closer segment could lie outside the box, but never outside a box of the best distance
+                if (best > radius) {
+                    candidates = query(lat, lon, best, scale);
+                }
+                return nearest(candidates, lat, lon, scale);
+            }
+            if (radius > 180) {
+                return null;
+            }
+            radius *= 4;
+        }
+    }
+
+    // meters from the point to the nearest point of the route
+    public double distanceTo(double lat, double lon) {
+        Position position = project(lat, lon);
+        if (position == null) {
+            return Double.MAX_VALUE;
+        }
+        int i = position.segment;
+        double nearestLat = points.getLatitude(i) + (points.getLatitude(i + 1) - points.getLatitude(i)) * position.fraction;
+        double nearestLon = points.getLongitude(i) + (points.getLongitude(i + 1) - points.getLongitude(i)) * position.fraction;
+        return GeometryUtils.distance(lat, lon, nearestLat, nearestLon);
+    }
+
+    // segment indices from the current start of the line
+    private List<Integer> query(double lat, double lon, double radius, double scale) {
+        double lonRadius = radius / scale;
+        List<Integer> result = segments.query(lat - radius, lon - lonRadius, lat + radius, lon + lonRadius);
+        for (int i = 0; i < result.size(); ++i) {
+            result.set(i, result.get(i) - trimmed);
+        }
+        return result;
+    }
+
+    private Position nearest(List<Integer> candidates, double lat, double lon, double scale) {
+        int bestSegment = -1;
+        double bestDistance = Double.MAX_VALUE;
+        double bestFraction = 0;
+        for (int segment : candidates) {
+            double[] result = planarDistance(segment, lat, lon, scale);
+            // ties go to the earlier segment, so a shared vertex belongs to the start of the route
+            if (result[0] < bestDistance || (result[0] == bestDistance && segment < bestSegment)) {
+                bestDistance = result[0];
+                bestFraction = result[1];
+                bestSegment = segment;
+            }
+        }
+        double length = distanceAt(bestSegment + 1) - distanceAt(bestSegment);
+        return new Position(bestSegment, bestFraction, distanceAt(bestSegment) + length * bestFraction);
+    }
+
+    // distance in latitude degrees with longitudes scaled to the point's latitude, and the fraction
+    private double[] planarDistance(int segment, double lat, double lon, double scale) {
+        double ay = points.getLatitude(segment);
+        double ax = points.getLongitude(segment) * scale;
+        double by = points.getLatitude(segment + 1);
+        double bx = points.getLongitude(segment + 1) * scale;
+        double px = lon * scale;
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? ((px - ax) * dx + (lat - ay) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        double x = ax + t * dx - px;
+        double y = ay + t * dy - lat;
+        return new double[] {Math.sqrt(x * x + y * y), t};
+    }
+}
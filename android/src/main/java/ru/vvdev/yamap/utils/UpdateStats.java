@@ -0,0 +1,53 @@
+package ru.vvdev.yamap.utils;
+
+// Counts MapKit calls made by the map object views and the ones skipped because a
+// re-render brought values MapKit already has. Only touched on the UI thread
+public class UpdateStats {
+    private static long applied = 0;
+    private static long propsSkipped = 0;
+    private static long geometrySkipped = 0;
+
+    // true when a prop gets a new value, an unchanged one is counted as skipped
+    public static boolean changed(int current, int value) {
+        if (current == value) {
+            ++propsSkipped;
+            return false;
+        }
+        return true;
+    }
+
+    public static boolean changed(float current, float value) {
+        if (current == value) {
+            ++propsSkipped;
+            return false;
+        }
+        return true;
+    }
+
+    public static void geometrySkipped() {
+        ++geometrySkipped;
+    }
+
+    // number of MapKit setters called in one flush
+    public static void applied(int calls) {
+        applied += calls;
+    }
+
+    public static long getApplied() {
+        return applied;
+    }
+
+    public static long getPropsSkipped() {
+        return propsSkipped;
+    }
+
+    public static long getGeometrySkipped() {
+        return geometrySkipped;
+    }
+
+    public static void reset() {
+        applied = 0;
+        propsSkipped = 0;
+        geometrySkipped = 0;
+    }
+}
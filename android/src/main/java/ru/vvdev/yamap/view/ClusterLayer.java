@@ -0,0 +1,279 @@
+package ru.vvdev.yamap.view;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import com.yandex.mapkit.geometry.Point;
+import com.yandex.mapkit.map.CameraPosition;
+import com.yandex.mapkit.map.MapObject;
+import com.yandex.mapkit.map.MapObjectCollection;
+import com.yandex.mapkit.map.MapObjectTapListener;
+import com.yandex.mapkit.map.PlacemarkMapObject;
+import com.yandex.mapkit.map.VisibleRegion;
+import com.yandex.runtime.image.ImageProvider;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import ru.vvdev.yamap.utils.Clusterer;
+
+// Opt-in clustering of the YamapMarker children of a map. Markers are hidden while
+// they are part of a cluster; clusters of the visible region are drawn as placemarks
+// of a separate collection
+class ClusterLayer implements MapObjectTapListener {
+    interface OnClusterPressListener {
+        void onClusterPress(List<YamapMarker> markers, Point point);
+    }
+
+    private static final int[] COUNT_BUCKETS = {10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // cluster icons by color and count bucket, shared by all maps
+    private static final HashMap<String, ImageProvider> icons = new HashMap<>();
+
+    private final YamapView mapView;
+    private final MapObjectCollection clustersCollection;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final OnClusterPressListener listener;
+
+    private int radius = 60;
+    private int maxZoom = 16;
+    private int color = Color.parseColor("#1E98FF");
+
+    private Clusterer clusterer = null;
+    private ArrayList<YamapMarker> indexedMarkers = new ArrayList<>();
+    private boolean indexDirty = true;
+    private int generation = 0;
+    private Set<YamapMarker> shownMarkers = new HashSet<>();
+    private int lastZoom = -1;
+    private boolean invalidateScheduled = false;
+
+    ClusterLayer(YamapView mapView, OnClusterPressListener listener) {
+        this.mapView = mapView;
+        this.listener = listener;
+        clustersCollection = mapView.getMap().getMapObjects().addCollection();
+        clustersCollection.addTapListener(this);
+        for (YamapMarker marker : mapView.getMarkers()) {
+            marker.setClustered(true);
+        }
+        invalidate();
+    }
+
+    void setRadius(int _radius) {
+        radius = _radius;
+        invalidate();
+    }
+
+    void setMaxZoom(int _maxZoom) {
+        maxZoom = _maxZoom;
+        invalidate();
+    }
+
+    void setColor(int _color) {
+        color = _color;
+        lastZoom = -1;
+        update(mapView.getMap().getCameraPosition(), true);
+    }
+
+    void onMarkerAdded(YamapMarker marker) {
+        marker.setClustered(true);
+        invalidate();
+    }
+
+    void onMarkerRemoved(YamapMarker marker) {
+        shownMarkers.remove(marker);
+        invalidate();
+    }
+
+    // marker set or positions changed: the hierarchy is rebuilt off the UI thread,
+    // once for all changes made during the current UI thread pass
+    void invalidate() {
+        indexDirty = true;
+        if (invalidateScheduled) {
+            return;
+        }
+        invalidateScheduled = true;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                invalidateScheduled = false;
+                rebuild();
+            }
+        });
+    }
+
+    private void rebuild() {
+        if (!indexDirty) {
+            return;
+        }
+        final int currentGeneration = ++generation;
+        final ArrayList<YamapMarker> markers = new ArrayList<>();
+        for (YamapMarker marker : mapView.getMarkers()) {
+            if (marker.point != null) {
+                markers.add(marker);
+            }
+        }
+        final double[] lats = new double[markers.size()];
+        final double[] lons = new double[markers.size()];
+        for (int i = 0; i < markers.size(); ++i) {
+            lats[i] = markers.get(i).point.getLatitude();
+            lons[i] = markers.get(i).point.getLongitude();
+        }
+        final int _radius = radius;
+        final int _maxZoom = maxZoom;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Clusterer _clusterer = new Clusterer(_radius, 0, _maxZoom);
+                _clusterer.load(lats, lons, lats.length);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (currentGeneration != generation) {
+                            return;
+                        }
+                        clusterer = _clusterer;
+                        indexedMarkers = markers;
+                        indexDirty = false;
+                        lastZoom = -1;
+                        update(mapView.getMap().getCameraPosition(), true);
+                    }
+                });
+            }
+        });
+    }
+
+    // re-evaluated when the integer zoom changes or the camera stops
+    void update(CameraPosition position, boolean finished) {
+        if (clusterer == null || indexDirty) {
+            return;
+        }
+        int zoom = (int) Math.floor(position.getZoom());
+        if (!finished && zoom == lastZoom) {
+            return;
+        }
+        lastZoom = zoom;
+
+        VisibleRegion region = mapView.getMap().getVisibleRegion();
+        Point[] corners = {region.getBottomLeft(), region.getBottomRight(), region.getTopLeft(), region.getTopRight()};
+        double minLat = corners[0].getLatitude();
+        double maxLat = minLat;
+        double minLon = corners[0].getLongitude();
+        double maxLon = minLon;
+        for (Point corner : corners) {
+            minLat = Math.min(minLat, corner.getLatitude());
+            maxLat = Math.max(maxLat, corner.getLatitude());
+            minLon = Math.min(minLon, corner.getLongitude());
+            maxLon = Math.max(maxLon, corner.getLongitude());
+        }
+        // a margin of half a screen keeps markers from popping in at the edges while panning
+        double latMargin = (maxLat - minLat) / 2;
+        double lonMargin = (maxLon - minLon) / 2;
+        List<Clusterer.Cluster> clusters = clusterer.getClusters(minLat - latMargin, minLon - lonMargin, maxLat + latMargin, maxLon + lonMargin, position.getZoom());
+
+        clustersCollection.clear();
+        Set<YamapMarker> nextShown = new HashSet<>();
+        for (Clusterer.Cluster cluster : clusters) {
+            if (cluster.count == 1) {
+                nextShown.add(indexedMarkers.get(cluster.item));
+                continue;
+            }
+            PlacemarkMapObject placemark = clustersCollection.addPlacemark(new Point(cluster.getLatitude(), cluster.getLongitude()), getIcon(cluster.count));
+            placemark.setUserData(cluster);
+        }
+        for (YamapMarker marker : shownMarkers) {
+            if (!nextShown.contains(marker)) {
+                marker.setClustered(true);
+            }
+        }
+        for (YamapMarker marker : nextShown) {
+            if (!shownMarkers.contains(marker)) {
+                marker.setClustered(false);
+            }
+        }
+        shownMarkers = nextShown;
+    }
+
+    // brings markers back to normal display
+    void release() {
+        ++generation;
+        indexDirty = false;
+        for (YamapMarker marker : mapView.getMarkers()) {
+            marker.setClustered(false);
+        }
+        shownMarkers.clear();
+        mapView.getMap().getMapObjects().remove(clustersCollection);
+    }
+
+    private static String getLabel(int count) {
+        String label = String.valueOf(count);
+        for (int i = COUNT_BUCKETS.length - 1; i >= 0; --i) {
+            if (count >= COUNT_BUCKETS[i]) {
+                label = COUNT_BUCKETS[i] + "+";
+                break;
+            }
+        }
+        return label;
+    }
+
+    private ImageProvider getIcon(int count) {
+        String label = getLabel(count);
+        String key = "yamap_cluster_" + color + "_" + label;
+        ImageProvider icon = icons.get(key);
+        if (icon == null) {
+            icon = ImageProvider.fromBitmap(drawIcon(label), true, key);
+            icons.put(key, icon);
+        }
+        return icon;
+    }
+
+    private Bitmap drawIcon(String label) {
+        float density = mapView.getResources().getDisplayMetrics().density;
+        float textSize = 14 * density;
+        Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextSize(textSize);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setFakeBoldText(true);
+        float textWidth = textPaint.measureText(label);
+        int size = (int) Math.ceil(Math.max(textWidth + 16 * density, 36 * density));
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint fill = new Paint(Paint.ANTI_ALIAS_FLAG);
+        fill.setColor(color);
+        canvas.drawCircle(size / 2f, size / 2f, size / 2f, fill);
+        Paint stroke = new Paint(Paint.ANTI_ALIAS_FLAG);
+        stroke.setColor(Color.WHITE);
+        stroke.setStyle(Paint.Style.STROKE);
+        stroke.setStrokeWidth(2 * density);
+        canvas.drawCircle(size / 2f, size / 2f, size / 2f - density, stroke);
+        float baseline = size / 2f - (textPaint.descent() + textPaint.ascent()) / 2;
+        canvas.drawText(label, size / 2f, baseline, textPaint);
+        return bitmap;
+    }
+
+    @Override
+    public boolean onMapObjectTap(@NonNull MapObject mapObject, @NonNull Point point) {
+        Object data = mapObject.getUserData();
+        if (!(data instanceof Clusterer.Cluster)) {
+            return false;
+        }
+        Clusterer.Cluster cluster = (Clusterer.Cluster) data;
+        ArrayList<YamapMarker> markers = new ArrayList<>(cluster.count);
+        for (int item : cluster.getItems()) {
+            markers.add(indexedMarkers.get(item));
+        }
+        listener.onClusterPress(markers, new Point(cluster.getLatitude(), cluster.getLongitude()));
+        return true;
+    }
+}
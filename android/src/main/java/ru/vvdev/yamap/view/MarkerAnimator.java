@@ -0,0 +1,148 @@
+package ru.vvdev.yamap.view;
+
+import android.view.Choreographer;
+
+import com.yandex.mapkit.geometry.Point;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+// Moves markers on the display frame clock. All running animations are advanced in a
+// single frame callback, which is only registered while something is animating
+class MarkerAnimator implements Choreographer.FrameCallback {
+    static final int EASING_LINEAR = 0;
+    static final int EASING_EASE_IN = 1;
+    static final int EASING_EASE_OUT = 2;
+    static final int EASING_EASE_IN_OUT = 3;
+    // indices, clusters and culling follow a running animation at this interval, ms
+    private static final long COMMIT_INTERVAL = 250;
+
+    private static class Animation {
+        final YamapMarker marker;
+        final double fromLat;
+        final double fromLon;
+        final double toLat;
+        final double toLon;
+        final float fromDirection;
+        final float directionDelta;
+        final boolean rotate;
+        final long duration;
+        final int easing;
+        long start = -1;
+        long lastCommit = -1;
+
+        Animation(YamapMarker marker, Point from, Point to, float fromDirection, float toDirection, boolean rotate, long duration, int easing) {
+            this.marker = marker;
+            this.fromLat = from.getLatitude();
+            this.fromLon = from.getLongitude();
+            this.toLat = to.getLatitude();
+            this.toLon = to.getLongitude();
+            this.fromDirection = fromDirection;
+            // the shorter way round
+            this.directionDelta = ((toDirection - fromDirection) % 360 + 540) % 360 - 180;
+            this.rotate = rotate;
+            this.duration = duration;
+            this.easing = easing;
+        }
+    }
+
+    private static MarkerAnimator instance = null;
+
+    private final HashMap<YamapMarker, Animation> animations = new HashMap<>();
+    private boolean scheduled = false;
+
+    static MarkerAnimator getInstance() {
+        if (instance == null) {
+            instance = new MarkerAnimator();
+        }
+        return instance;
+    }
+
+    static int parseEasing(String easing) {
+        if ("easeIn".equals(easing)) {
+            return EASING_EASE_IN;
+        } else if ("easeOut".equals(easing)) {
+            return EASING_EASE_OUT;
+        } else if ("easeInOut".equals(easing)) {
+            return EASING_EASE_IN_OUT;
+        }
+        return EASING_LINEAR;
+    }
+
+    // replaces a running animation of the marker, starting from where it is now
+    void animate(YamapMarker marker, Point to, float direction, boolean rotate, long duration, int easing) {
+        Point from = marker.point != null ? marker.point : to;
+        Animation previous = animations.put(marker, new Animation(marker, from, to, marker.getDirection(), direction, rotate, duration, easing));
+        // a superseded animation has moved the marker without committing its position
+        if (previous != null && previous.start >= 0) {
+            marker.commitAnimatedPosition();
+        }
+        if (!scheduled) {
+            scheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    void cancel(YamapMarker marker) {
+        Animation previous = animations.remove(marker);
+        if (previous != null && previous.start >= 0) {
+            marker.commitAnimatedPosition();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        long now = frameTimeNanos / 1000000;
+        ArrayList<Animation> committed = null;
+        Iterator<Animation> iterator = animations.values().iterator();
+        while (iterator.hasNext()) {
+            Animation animation = iterator.next();
+            if (animation.start < 0) {
+                animation.start = now;
+                animation.lastCommit = now;
+            }
+            float t = animation.duration > 0 ? Math.min(1, (now - animation.start) / (float) animation.duration) : 1;
+            float k = ease(t, animation.easing);
+            double lat = animation.fromLat + (animation.toLat - animation.fromLat) * k;
+            double lon = animation.fromLon + (animation.toLon - animation.fromLon) * k;
+            float direction = animation.rotate ? animation.fromDirection + animation.directionDelta * k : Float.NaN;
+            animation.marker.applyAnimationFrame(lat, lon, direction);
+            boolean done = t >= 1;
+            if (done) {
+                iterator.remove();
+            }
+            if (done || now - animation.lastCommit >= COMMIT_INTERVAL) {
+                animation.lastCommit = now;
+                if (committed == null) {
+                    committed = new ArrayList<>();
+                }
+                committed.add(animation);
+            }
+        }
+        // indices, clusters and culling are updated at the end and at COMMIT_INTERVAL, not per frame
+        if (committed != null) {
+            for (Animation animation : committed) {
+                animation.marker.commitAnimatedPosition();
+            }
+        }
+        if (!animations.isEmpty()) {
+            scheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    private static float ease(float t, int easing) {
+        switch (easing) {
+            case EASING_EASE_IN:
+                return t * t;
+            case EASING_EASE_OUT:
+                return 1 - (1 - t) * (1 - t);
+            case EASING_EASE_IN_OUT:
+                return t * t * (3 - 2 * t);
+            default:
+                return t;
+        }
+    }
+}
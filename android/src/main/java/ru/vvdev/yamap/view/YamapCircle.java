@@ -4,21 +4,17 @@ import android.content.Context;
 import android.graphics.Color;
 import android.view.ViewGroup;
 
-import androidx.annotation.NonNull;
-
-import com.facebook.react.bridge.Arguments;
-import com.facebook.react.bridge.ReactContext;
-import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.uimanager.events.RCTEventEmitter;
+import com.yandex.mapkit.geometry.BoundingBox;
 import com.yandex.mapkit.geometry.Circle;
 import com.yandex.mapkit.geometry.Point;
 import com.yandex.mapkit.map.CircleMapObject;
 import com.yandex.mapkit.map.MapObject;
-import com.yandex.mapkit.map.MapObjectTapListener;
 
 import ru.vvdev.yamap.models.ReactMapObject;
+import ru.vvdev.yamap.utils.GeometryUtils;
+import ru.vvdev.yamap.utils.UpdateStats;
 
-public class YamapCircle extends ViewGroup implements MapObjectTapListener, ReactMapObject {
+public class YamapCircle extends ViewGroup implements ReactMapObject {
     public Circle circle;
 
     private CircleMapObject mapObject;
@@ -26,9 +22,25 @@ public class YamapCircle extends ViewGroup implements MapObjectTapListener, Reac
     private int strokeColor = Color.BLACK;
     private int zIndex = 1;
     private float strokeWidth = 1.f;
+    private boolean culled = false;
+    // shown while minZoom <= zoom < maxZoom
+    private float minZoom = 0;
+    private float maxZoom = Float.MAX_VALUE;
+    private float zoom = 0;
+    private boolean visible = true;
     private Point center = new Point(0, 0);
     private float radius = 0;
 
+    // fields changed since the last flush to MapKit
+    private static final int DIRTY_GEOMETRY = 1;
+    private static final int DIRTY_STROKE_WIDTH = 1 << 1;
+    private static final int DIRTY_STROKE_COLOR = 1 << 2;
+    private static final int DIRTY_FILL_COLOR = 1 << 3;
+    private static final int DIRTY_Z_INDEX = 1 << 4;
+    private static final int DIRTY_VISIBILITY = 1 << 5;
+    private static final int DIRTY_ALL = (1 << 6) - 1;
+    private int dirty = DIRTY_ALL;
+
     public YamapCircle(Context context) {
         super(context);
         circle = new Circle(center, radius);
@@ -39,55 +51,134 @@ public class YamapCircle extends ViewGroup implements MapObjectTapListener, Reac
     }
 
     // props
+    // the same center or radius does not rebuild the circle
     public void setCenter(Point point) {
+        if (point.getLatitude() == center.getLatitude() && point.getLongitude() == center.getLongitude()) {
+            UpdateStats.geometrySkipped();
+            return;
+        }
         center = point;
-        updateGeometry();
-        updateCircle();
+        dirty |= DIRTY_GEOMETRY;
     }
 
     public void setRadius(float _radius) {
+        if (_radius == radius) {
+            UpdateStats.geometrySkipped();
+            return;
+        }
         radius = _radius;
-        updateGeometry();
-        updateCircle();
+        dirty |= DIRTY_GEOMETRY;
     }
 
+    // Circle is immutable, a new one is made once per flush with a changed geometry
     private void updateGeometry() {
         circle = new Circle(center, radius);
     }
 
     public void setZIndex(int _zIndex) {
-        zIndex = _zIndex;
-        updateCircle();
+        if (UpdateStats.changed(zIndex, _zIndex)) {
+            zIndex = _zIndex;
+            dirty |= DIRTY_Z_INDEX;
+        }
     }
 
     public void setStrokeColor(int _color) {
-        strokeColor = _color;
-        updateCircle();
+        if (UpdateStats.changed(strokeColor, _color)) {
+            strokeColor = _color;
+            dirty |= DIRTY_STROKE_COLOR;
+        }
     }
 
     public void setFillColor(int _color) {
-        fillColor = _color;
-        updateCircle();
+        if (UpdateStats.changed(fillColor, _color)) {
+            fillColor = _color;
+            dirty |= DIRTY_FILL_COLOR;
+        }
     }
 
     public void setStrokeWidth(float width) {
-        strokeWidth = width;
-        updateCircle();
+        if (UpdateStats.changed(strokeWidth, width)) {
+            strokeWidth = width;
+            dirty |= DIRTY_STROKE_WIDTH;
+        }
     }
 
-    private void updateCircle() {
-        if (mapObject != null) {
+    // called once per React update transaction, pushes only the changed fields
+    public void updateCircle() {
+        if ((dirty & DIRTY_GEOMETRY) != 0) {
+            updateGeometry();
+        }
+        if (mapObject == null || dirty == 0) {
+            return;
+        }
+        // visibility is pushed only when it flips, see updateVisibility
+        UpdateStats.applied(Integer.bitCount(dirty & ~DIRTY_VISIBILITY));
+        if ((dirty & DIRTY_GEOMETRY) != 0) {
             mapObject.setGeometry(circle);
+            if (getParent() instanceof YamapView) {
+                ((YamapView) getParent()).onChildGeometryChanged(this);
+            }
+        }
+        if ((dirty & DIRTY_STROKE_WIDTH) != 0) {
             mapObject.setStrokeWidth(strokeWidth);
+        }
+        if ((dirty & DIRTY_STROKE_COLOR) != 0) {
             mapObject.setStrokeColor(strokeColor);
+        }
+        if ((dirty & DIRTY_FILL_COLOR) != 0) {
             mapObject.setFillColor(fillColor);
+        }
+        if ((dirty & DIRTY_Z_INDEX) != 0) {
             mapObject.setZIndex(zIndex);
         }
+        if ((dirty & DIRTY_VISIBILITY) != 0) {
+            updateVisibility();
+        }
+        dirty = 0;
+    }
+
+    public void setCulled(boolean _culled) {
+        if (culled == _culled) {
+            return;
+        }
+        culled = _culled;
+        updateVisibility();
+    }
+
+    public void setMinZoom(float _minZoom) {
+        if (UpdateStats.changed(minZoom, _minZoom)) {
+            minZoom = _minZoom;
+            dirty |= DIRTY_VISIBILITY;
+        }
+    }
+
+    public void setMaxZoom(float _maxZoom) {
+        if (UpdateStats.changed(maxZoom, _maxZoom)) {
+            maxZoom = _maxZoom;
+            dirty |= DIRTY_VISIBILITY;
+        }
+    }
+
+    // called by the map on every camera change, MapKit is touched only when visibility flips
+    public void onCameraZoomChanged(float _zoom) {
+        zoom = _zoom;
+        updateVisibility();
+    }
+
+    private void updateVisibility() {
+        boolean _visible = !culled && zoom >= minZoom && zoom < maxZoom;
+        if (mapObject != null && _visible != visible) {
+            mapObject.setVisible(_visible);
+        }
+        visible = _visible;
     }
 
     public void setMapObject(MapObject obj) {
         mapObject = (CircleMapObject) obj;
-        mapObject.addTapListener(this);
+        // new map objects are visible
+        visible = true;
+        // the map object is created with the current geometry
+        dirty = DIRTY_ALL & ~DIRTY_GEOMETRY;
         updateCircle();
     }
 
@@ -95,10 +186,15 @@ public class YamapCircle extends ViewGroup implements MapObjectTapListener, Reac
         return mapObject;
     }
 
-    @Override
-    public boolean onMapObjectTap(@NonNull MapObject mapObject, @NonNull Point point) {
-        WritableMap e = Arguments.createMap();
-        ((ReactContext) getContext()).getJSModule(RCTEventEmitter.class).receiveEvent(getId(), "onPress", e);
-        return false;
+    public BoundingBox getBounds() {
+        return GeometryUtils.boundsOf(center, radius);
+    }
+
+    public boolean isShownOnMap() {
+        return mapObject != null && visible;
+    }
+
+    public boolean hitTest(Point point, double tolerance) {
+        return GeometryUtils.distance(center.getLatitude(), center.getLongitude(), point.getLatitude(), point.getLongitude()) <= radius + tolerance;
     }
 }
@@ -6,39 +6,75 @@ import android.graphics.Canvas;
 import android.graphics.PointF;
 import android.view.View;
 
-import androidx.annotation.NonNull;
-
-import com.facebook.react.bridge.Arguments;
-import com.facebook.react.bridge.ReactContext;
-import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.uimanager.events.RCTEventEmitter;
 import com.facebook.react.views.view.ReactViewGroup;
+import com.yandex.mapkit.ScreenPoint;
+import com.yandex.mapkit.geometry.BoundingBox;
 import com.yandex.mapkit.geometry.Point;
 import com.yandex.mapkit.map.IconStyle;
 import com.yandex.mapkit.map.MapObject;
-import com.yandex.mapkit.map.MapObjectTapListener;
 import com.yandex.mapkit.map.PlacemarkMapObject;
+import com.yandex.mapkit.map.RotationType;
 import com.yandex.runtime.image.ImageProvider;
 
 import java.util.ArrayList;
 
 import ru.vvdev.yamap.models.ReactMapObject;
+import ru.vvdev.yamap.utils.BitmapPool;
 import ru.vvdev.yamap.utils.Callback;
+import ru.vvdev.yamap.utils.GeometryUtils;
 import ru.vvdev.yamap.utils.ImageLoader;
+import ru.vvdev.yamap.utils.ImageProviderRegistry;
 
-public class YamapMarker extends ReactViewGroup implements MapObjectTapListener, ReactMapObject {
+public class YamapMarker extends ReactViewGroup implements ReactMapObject {
     public Point point;
     private int zIndex = 1;
     private float scale = 1;
     private PointF markerAnchor = null;
     private String iconSource;
+    private int iconWidth = 0;
+    private int iconHeight = 0;
+    private Bitmap.Config iconConfig = Bitmap.Config.ARGB_8888;
     private View _childView;
+    private Bitmap childSnapshot = null;
+    private ImageProvider childSnapshotProvider = null;
+    private boolean childSnapshotDirty = true;
+    // every snapshot gets its own provider id, so MapKit never mixes it up with the previous one
+    private static long snapshotSequence = 0;
     private PlacemarkMapObject mapObject;
     private ArrayList<View> childs = new ArrayList<>();
+    private YamapView mapView = null;
+    private ImageLoader.Request iconRequest = null;
+    // shared provider held in ImageProviderRegistry
+    private ImageProviderRegistry.Handle icon = null;
+    // the icon load was dropped by an overloaded ImageLoader, retried when the marker is shown again
+    private boolean iconRetry = false;
+
+    // hidden because the marker is part of a cluster
+    private boolean clustered = false;
+    private boolean culled = false;
+    // icon heading in degrees, set by animateTo
+    private float direction = 0;
+    private boolean rotateIcon = false;
+    // shown while minZoom <= zoom < maxZoom
+    private float minZoom = 0;
+    private float maxZoom = Float.MAX_VALUE;
+    private float zoom = 0;
+    private boolean visible = true;
+
+    // fields changed since the last flush to MapKit
+    private static final int DIRTY_GEOMETRY = 1;
+    private static final int DIRTY_Z_INDEX = 1 << 1;
+    private static final int DIRTY_ICON_STYLE = 1 << 2;
+    private static final int DIRTY_ICON = 1 << 3;
+    private static final int DIRTY_VISIBILITY = 1 << 4;
+    private static final int DIRTY_ALL = (1 << 5) - 1;
+    private int dirty = DIRTY_ALL;
 
     private OnLayoutChangeListener childLayoutListener = new OnLayoutChangeListener() {
         @Override
         public void onLayoutChange(View v, int left, int top, int right, int bottom, int oldLeft, int oldTop, int oldRight, int oldBottom) {
+            childSnapshotDirty = true;
+            dirty |= DIRTY_ICON;
             updateMarker();
         }
     };
@@ -53,75 +89,323 @@ public class YamapMarker extends ReactViewGroup implements MapObjectTapListener,
 
     // props
     public void setPoint(Point _point) {
+        // a new point from JS wins over a running animation
+        cancelAnimation();
         point = _point;
-        updateMarker();
+        dirty |= DIRTY_GEOMETRY;
+    }
+
+    // command, moves the marker natively on the frame clock. The icon is turned to the
+    // heading if one is given
+    public void animateTo(Point target, int duration, String easing, Double heading) {
+        boolean rotate = heading != null;
+        if (rotate && !rotateIcon) {
+            rotateIcon = true;
+            dirty |= DIRTY_ICON_STYLE;
+            updateMarker();
+        }
+        if (mapObject == null) {
+            point = target;
+            direction = rotate ? heading.floatValue() : direction;
+            dirty |= DIRTY_GEOMETRY;
+            return;
+        }
+        MarkerAnimator.getInstance().animate(this, target, rotate ? heading.floatValue() : direction, rotate, duration, MarkerAnimator.parseEasing(easing));
+    }
+
+    // position only, used by batched updates from the map. The icon and its style stay as they are
+    void moveTo(Point _point) {
+        cancelAnimation();
+        point = _point;
+        if (mapObject != null) {
+            mapObject.setGeometry(point);
+        }
+    }
+
+    public void cancelAnimation() {
+        MarkerAnimator.getInstance().cancel(this);
+    }
+
+    float getDirection() {
+        return direction;
+    }
+
+    void applyAnimationFrame(double lat, double lon, float _direction) {
+        point = new Point(lat, lon);
+        if (mapObject == null) {
+            return;
+        }
+        mapObject.setGeometry(point);
+        if (!Float.isNaN(_direction)) {
+            direction = _direction;
+            mapObject.setDirection(direction);
+        }
+    }
+
+    // the animated position reaches the map's index, clusters and culling
+    void commitAnimatedPosition() {
+        if (mapView != null) {
+            mapView.onChildGeometryChanged(this);
+        }
     }
 
     public void setZIndex(int _zIndex) {
         zIndex = _zIndex;
-        updateMarker();
+        dirty |= DIRTY_Z_INDEX;
     }
 
     public void setScale(float _scale) {
         scale = _scale;
-        updateMarker();
+        dirty |= DIRTY_ICON_STYLE;
     }
 
     public void setIconSource(String source) {
+        if (iconSource != null && !iconSource.equals(source)) {
+            cancelIconLoad();
+        }
         iconSource = source;
-        updateMarker();
+        dirty |= DIRTY_ICON;
+    }
+
+    public void setIconSize(int width, int height) {
+        iconWidth = width;
+        iconHeight = height;
+        dirty |= DIRTY_ICON;
+    }
+
+    public void setIconConfig(Bitmap.Config config) {
+        iconConfig = config;
+        dirty |= DIRTY_ICON;
+    }
+
+    private ImageLoader.DecodeOptions getDecodeOptions() {
+        float density = getResources().getDisplayMetrics().density;
+        return new ImageLoader.DecodeOptions(Math.round(iconWidth * density), Math.round(iconHeight * density), iconConfig);
     }
 
     public void setAnchor(PointF anchor) {
         markerAnchor = anchor;
-        updateMarker();
+        dirty |= DIRTY_ICON_STYLE;
     }
 
-    private void updateMarker() {
-        if (mapObject != null) {
-            final IconStyle iconStyle = new IconStyle();
-            iconStyle.setScale(scale);
-            if (markerAnchor != null) {
-                iconStyle.setAnchor(markerAnchor);
-            }
+    private IconStyle getIconStyle() {
+        IconStyle iconStyle = new IconStyle();
+        iconStyle.setScale(scale);
+        if (markerAnchor != null) {
+            iconStyle.setAnchor(markerAnchor);
+        }
+        if (rotateIcon) {
+            iconStyle.setRotationType(RotationType.ROTATE);
+        }
+        return iconStyle;
+    }
+
+    // the map widens its tap search by the largest icon, so taps away from the anchor
+    // still find the marker
+    private void applyIconStyle() {
+        mapObject.setIconStyle(getIconStyle());
+        if (mapView != null) {
+            mapView.onMarkerIconSize(Math.max(getIconWidth(), getIconHeight()) * scale);
+        }
+    }
+
+    // size of the shown icon in pixels, 0 while there is none
+    private int getIconWidth() {
+        return icon != null ? icon.getWidth() : _childView != null ? _childView.getWidth() : 0;
+    }
+
+    private int getIconHeight() {
+        return icon != null ? icon.getHeight() : _childView != null ? _childView.getHeight() : 0;
+    }
+
+    // called once per React update transaction, pushes only the changed fields
+    public void updateMarker() {
+        if (mapObject == null || dirty == 0) {
+            return;
+        }
+        if ((dirty & DIRTY_GEOMETRY) != 0) {
             mapObject.setGeometry(point);
+            if (mapView != null) {
+                mapView.onChildGeometryChanged(this);
+            }
+        }
+        if ((dirty & DIRTY_GEOMETRY) != 0 && rotateIcon) {
+            mapObject.setDirection(direction);
+        }
+        if ((dirty & DIRTY_Z_INDEX) != 0) {
             mapObject.setZIndex(zIndex);
-            mapObject.setIconStyle(iconStyle);
+        }
+        if ((dirty & DIRTY_ICON) != 0) {
+            updateIcon();
+        } else if ((dirty & DIRTY_ICON_STYLE) != 0) {
+            applyIconStyle();
+        }
+        if ((dirty & DIRTY_VISIBILITY) != 0) {
+            updateVisibility();
+        }
+        dirty = 0;
+    }
 
-            if (_childView != null) {
-                try {
-                    Bitmap b = Bitmap.createBitmap(_childView.getWidth(), _childView.getHeight(), Bitmap.Config.ARGB_8888);
-                    Canvas c = new Canvas(b);
-                    _childView.draw(c);
-                    mapObject.setIcon(ImageProvider.fromBitmap(b));
-                    mapObject.setIconStyle(iconStyle);
-                } catch (Exception e) {
-                    e.printStackTrace();
+    private void updateIcon() {
+        if (_childView != null) {
+            try {
+                // double buffered: the bitmap behind the current icon is never drawn over,
+                // it goes back to the pool only after the map object has the new one
+                Bitmap previous = null;
+                if (childSnapshotDirty || childSnapshot == null) {
+                    previous = childSnapshot;
+                    updateChildSnapshot();
                 }
+                releaseIcon();
+                mapObject.setIcon(childSnapshotProvider);
+                applyIconStyle();
+                BitmapPool.release(previous);
+            } catch (Exception e) {
+                e.printStackTrace();
             }
-            if (childs.size() == 0) {
-                if (!iconSource.equals("")) {
-                    ImageLoader.DownloadImageBitmap(getContext(), iconSource, new Callback<Bitmap>() {
-                        @Override
-                        public void invoke(Bitmap bitmap) {
-                            try {
-                                if (mapObject != null) {
-                                    mapObject.setIcon(ImageProvider.fromBitmap(bitmap));
-                                    mapObject.setIconStyle(iconStyle);
-                                }
-                            } catch (Exception e) {
-                                e.printStackTrace();
+        }
+        if (childs.size() == 0) {
+            if (iconSource != null && !iconSource.equals("")) {
+                cancelIconLoad();
+                iconRetry = false;
+                int priority = mapView != null && mapView.isInVisibleRegion(point) ? ImageLoader.PRIORITY_HIGH : ImageLoader.PRIORITY_LOW;
+                ImageLoader.DecodeOptions options = getDecodeOptions();
+                final String key = ImageLoader.cacheKey(iconSource, options);
+                if (icon != null && key.equals(icon.getKey())) {
+                    applyIconStyle();
+                    return;
+                }
+                ImageProviderRegistry.Handle shared = ImageProviderRegistry.acquireExisting(key);
+                if (shared != null) {
+                    releaseIcon();
+                    icon = shared;
+                    mapObject.setIcon(shared.getProvider());
+                    applyIconStyle();
+                    return;
+                }
+                iconRequest = ImageLoader.DownloadImageBitmap(getContext(), iconSource, options, priority, new Callback<Bitmap>() {
+                    @Override
+                    public void invoke(Bitmap bitmap) {
+                        if (bitmap == null) {
+                            iconRequest = null;
+                            iconRetry = true;
+                            return;
+                        }
+                        try {
+                            if (mapObject != null) {
+                                ImageProviderRegistry.Handle provider = ImageProviderRegistry.acquire(key, bitmap);
+                                releaseIcon();
+                                icon = provider;
+                                mapObject.setIcon(provider.getProvider());
+                                applyIconStyle();
                             }
+                        } catch (Exception e) {
+                            e.printStackTrace();
                         }
-                    });
-                }
+                    }
+                });
+            } else {
+                // the style still has to reach the map object if there is no icon to load
+                applyIconStyle();
             }
         }
     }
 
+    // draws the child view into a fresh bitmap from the pool, the caller releases the previous one
+    private void updateChildSnapshot() {
+        Bitmap b = BitmapPool.acquire(_childView.getWidth(), _childView.getHeight(), Bitmap.Config.ARGB_8888);
+        Canvas c = new Canvas(b);
+        _childView.draw(c);
+        childSnapshot = b;
+        // not cacheable, nobody else shows this bitmap
+        childSnapshotProvider = ImageProvider.fromBitmap(b, false, "yamap-snapshot-" + (++snapshotSequence));
+        childSnapshotDirty = false;
+    }
+
+    // gives back the shared provider; the registry drops it with its last marker
+    public void releaseIcon() {
+        ImageProviderRegistry.release(icon);
+        icon = null;
+    }
+
+    // only returns the bitmap to the pool when the map object no longer shows it
+    public void releaseChildSnapshot(boolean reusable) {
+        if (reusable) {
+            BitmapPool.release(childSnapshot);
+        }
+        childSnapshot = null;
+        childSnapshotProvider = null;
+        childSnapshotDirty = true;
+    }
+
+    void setClustered(boolean _clustered) {
+        if (clustered == _clustered) {
+            return;
+        }
+        clustered = _clustered;
+        updateVisibility();
+    }
+
+    public void setCulled(boolean _culled) {
+        if (culled == _culled) {
+            return;
+        }
+        culled = _culled;
+        updateVisibility();
+    }
+
+    public void setMinZoom(float _minZoom) {
+        minZoom = _minZoom;
+        dirty |= DIRTY_VISIBILITY;
+    }
+
+    public void setMaxZoom(float _maxZoom) {
+        maxZoom = _maxZoom;
+        dirty |= DIRTY_VISIBILITY;
+    }
+
+    // called by the map on every camera change, MapKit is touched only when visibility flips
+    public void onCameraZoomChanged(float _zoom) {
+        zoom = _zoom;
+        updateVisibility();
+    }
+
+    private void updateVisibility() {
+        boolean _visible = !clustered && !culled && zoom >= minZoom && zoom < maxZoom;
+        if (mapObject != null && _visible != visible) {
+            mapObject.setVisible(_visible);
+        }
+        visible = _visible;
+        if (visible && iconRetry && mapObject != null) {
+            iconRetry = false;
+            dirty |= DIRTY_ICON;
+            updateMarker();
+        }
+    }
+
+    void setMapView(YamapView view) {
+        mapView = view;
+    }
+
+    public void onNativeIdChanged() {
+        if (mapView != null) {
+            mapView.onMarkerIdChanged(this);
+        }
+    }
+
+    public void cancelIconLoad() {
+        if (iconRequest != null) {
+            iconRequest.cancel();
+            iconRequest = null;
+        }
+    }
+
     public void setMapObject(MapObject obj) {
         mapObject = (PlacemarkMapObject) obj;
-        mapObject.addTapListener(this);
+        // new map objects are visible
+        visible = true;
+        // the map object is created with the current point
+        dirty = DIRTY_ALL & ~DIRTY_GEOMETRY;
         updateMarker();
     }
 
@@ -129,13 +413,30 @@ public class YamapMarker extends ReactViewGroup implements MapObjectTapListener,
         return mapObject;
     }
 
+    public BoundingBox getBounds() {
+        return point != null ? new BoundingBox(point, point) : null;
+    }
+
     public void setChildView(View view) {
         if (view == null) {
-            _childView.removeOnLayoutChangeListener(childLayoutListener);
+            if (_childView != null) {
+                _childView.removeOnLayoutChangeListener(childLayoutListener);
+            }
             _childView = null;
+            // the snapshot stays on the map object until another icon replaces it
+            releaseChildSnapshot(false);
+            dirty |= DIRTY_ICON;
             updateMarker();
             return;
         }
+        if (_childView == view) {
+            return;
+        }
+        if (_childView != null) {
+            _childView.removeOnLayoutChangeListener(childLayoutListener);
+        }
+        childSnapshotDirty = true;
+        dirty |= DIRTY_ICON;
         _childView = view;
         _childView.addOnLayoutChangeListener(childLayoutListener);
     }
@@ -150,10 +451,51 @@ public class YamapMarker extends ReactViewGroup implements MapObjectTapListener,
         setChildView(childs.size() > 0 ? childs.get(0) : null);
     }
 
-    @Override
-    public boolean onMapObjectTap(@NonNull MapObject mapObject, @NonNull Point point) {
-        WritableMap e = Arguments.createMap();
-        ((ReactContext) getContext()).getJSModule(RCTEventEmitter.class).receiveEvent(getId(), "onPress", e);
-        return false;
+    public boolean isShownOnMap() {
+        return mapObject != null && visible;
+    }
+
+    // a tap on the icon or within tolerance meters of it is a hit. The icon rectangle is
+    // placed by the anchor and scaled to meters at the current zoom. Without a map or an
+    // icon only the distance to the anchor point counts
+    public boolean hitTest(Point _point, double tolerance) {
+        if (point == null) {
+            return false;
+        }
+        double distance = GeometryUtils.distance(point.getLatitude(), point.getLongitude(), _point.getLatitude(), _point.getLongitude());
+        if (distance <= tolerance) {
+            return true;
+        }
+        int width = getIconWidth();
+        int height = getIconHeight();
+        if (mapView == null || width == 0 || height == 0) {
+            return false;
+        }
+        double metersPerPixel = mapView.getMetersPerPixel(point);
+        ScreenPoint anchor = mapView.getMapWindow().worldToScreen(point);
+        ScreenPoint tap = mapView.getMapWindow().worldToScreen(_point);
+        if (metersPerPixel <= 0 || anchor == null || tap == null) {
+            return false;
+        }
+        // offset of the tap from the anchor in meters, along the screen axes
+        double x = (tap.getX() - anchor.getX()) * metersPerPixel;
+        double y = (tap.getY() - anchor.getY()) * metersPerPixel;
+        if (rotateIcon) {
+            // the icon is turned clockwise by its direction relative to the map
+            double angle = Math.toRadians(direction - mapView.getMap().getCameraPosition().getAzimuth());
+            double cos = Math.cos(angle);
+            double sin = Math.sin(angle);
+            double _x = x * cos + y * sin;
+            y = y * cos - x * sin;
+            x = _x;
+        }
+        double iconWidth = width * scale * metersPerPixel;
+        double iconHeight = height * scale * metersPerPixel;
+        double left = -(markerAnchor != null ? markerAnchor.x : 0.5) * iconWidth;
+        double top = -(markerAnchor != null ? markerAnchor.y : 0.5) * iconHeight;
+        // distance from the tap to the icon rectangle, 0 inside it
+        double dx = Math.max(0, Math.max(left - x, x - (left + iconWidth)));
+        double dy = Math.max(0, Math.max(top - y, y - (top + iconHeight)));
+        return Math.sqrt(dx * dx + dy * dy) <= tolerance;
     }
 }
@@ -0,0 +1,362 @@
+package ru.vvdev.yamap.view;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.PointF;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+
+import com.yandex.mapkit.geometry.BoundingBox;
+import com.yandex.mapkit.geometry.Point;
+import com.yandex.mapkit.map.IconStyle;
+import com.yandex.mapkit.map.MapObject;
+import com.yandex.mapkit.map.MapObjectCollection;
+import com.yandex.mapkit.map.MapObjectTapListener;
+import com.yandex.mapkit.map.PlacemarkMapObject;
+import com.yandex.runtime.image.ImageProvider;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ru.vvdev.yamap.events.Events;
+import ru.vvdev.yamap.events.MapObjectPressEvent;
+import ru.vvdev.yamap.models.ReactMapObject;
+import ru.vvdev.yamap.utils.Callback;
+import ru.vvdev.yamap.utils.GeometryUtils;
+import ru.vvdev.yamap.utils.ImageLoader;
+import ru.vvdev.yamap.utils.ImageProviderRegistry;
+import ru.vvdev.yamap.utils.QuadTree;
+
+// Many placemarks in one MapObjectCollection, described by flat arrays:
+// coordinates [lat0, lon0, lat1, lon1, ...], ids and indices into icons
+public class YamapMarkerCollection extends ViewGroup implements MapObjectTapListener, ReactMapObject {
+    private MapObjectCollection mapObject;
+    private double[] coordinates = new double[0];
+    private String[] ids = new String[0];
+    private int[] iconIndices = new int[0];
+    private String[] icons = new String[0];
+    private int zIndex = 1;
+    private float scale = 1;
+    private PointF markerAnchor = null;
+    private boolean culled = false;
+    // shown while minZoom <= zoom < maxZoom
+    private float minZoom = 0;
+    private float maxZoom = Float.MAX_VALUE;
+    private float zoom = 0;
+    private boolean visible = true;
+
+    // providers held in ImageProviderRegistry, by icon index
+    private ImageProviderRegistry.Handle[] iconHandles = new ImageProviderRegistry.Handle[0];
+    private ImageProvider[] iconProviders = new ImageProvider[0];
+    private ImageLoader.Request[] iconRequests = new ImageLoader.Request[0];
+    // placemarks of each icon group, to restyle them when the icon arrives
+    private List<List<PlacemarkMapObject>> groups = new ArrayList<>();
+    // item indices by position for tap hit tests, built on the first one after the coordinates change
+    private QuadTree<Integer> itemIndex = null;
+
+    private static final int DIRTY_ITEMS = 1;
+    private static final int DIRTY_ICONS = 1 << 1;
+    private static final int DIRTY_STYLE = 1 << 2;
+    private static final int DIRTY_VISIBILITY = 1 << 3;
+    private static final int DIRTY_ALL = (1 << 4) - 1;
+    private int dirty = DIRTY_ALL;
+
+    public YamapMarkerCollection(Context context) {
+        super(context);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+    }
+
+    // props
+    public void setCoordinates(double[] _coordinates) {
+        coordinates = _coordinates != null ? _coordinates : new double[0];
+        itemIndex = null;
+        dirty |= DIRTY_ITEMS;
+    }
+
+    public void setIds(String[] _ids) {
+        ids = _ids != null ? _ids : new String[0];
+    }
+
+    public void setIconIndices(int[] indices) {
+        iconIndices = indices != null ? indices : new int[0];
+        dirty |= DIRTY_ITEMS;
+    }
+
+    public void setIcons(String[] _icons) {
+        icons = _icons != null ? _icons : new String[0];
+        dirty |= DIRTY_ICONS | DIRTY_ITEMS;
+    }
+
+    public void setZIndex(int _zIndex) {
+        zIndex = _zIndex;
+        dirty |= DIRTY_STYLE;
+    }
+
+    public void setScale(float _scale) {
+        scale = _scale;
+        dirty |= DIRTY_STYLE;
+    }
+
+    public void setAnchor(PointF anchor) {
+        markerAnchor = anchor;
+        dirty |= DIRTY_STYLE;
+    }
+
+    public int getCount() {
+        return coordinates.length / 2;
+    }
+
+    public double getLatitude(int index) {
+        return coordinates[index * 2];
+    }
+
+    public double getLongitude(int index) {
+        return coordinates[index * 2 + 1];
+    }
+
+    public String getItemId(int index) {
+        return index < ids.length ? ids[index] : String.valueOf(index);
+    }
+
+    private IconStyle getIconStyle() {
+        IconStyle iconStyle = new IconStyle();
+        iconStyle.setScale(scale);
+        if (markerAnchor != null) {
+            iconStyle.setAnchor(markerAnchor);
+        }
+        return iconStyle;
+    }
+
+    private int getIconIndex(int item) {
+        int icon = item < iconIndices.length ? iconIndices[item] : 0;
+        return icon >= 0 && icon < icons.length ? icon : -1;
+    }
+
+    // called once per React update transaction
+    public void updateCollection() {
+        if (mapObject == null || dirty == 0) {
+            return;
+        }
+        mapObject.setZIndex(zIndex);
+        if ((dirty & DIRTY_ICONS) != 0) {
+            releaseIcons();
+            iconHandles = new ImageProviderRegistry.Handle[icons.length];
+            iconProviders = new ImageProvider[icons.length];
+            iconRequests = new ImageLoader.Request[icons.length];
+        }
+        if ((dirty & DIRTY_ITEMS) != 0) {
+            mapObject.clear();
+            groups = new ArrayList<>();
+        }
+        if ((dirty & DIRTY_ICONS) != 0) {
+            // cached icons arrive synchronously and are used by rebuild right away
+            for (int i = 0; i < icons.length; ++i) {
+                loadIcon(i);
+            }
+        }
+        if ((dirty & DIRTY_ITEMS) != 0) {
+            rebuild();
+            if (getParent() instanceof YamapView) {
+                ((YamapView) getParent()).onChildGeometryChanged(this);
+            }
+        } else if ((dirty & DIRTY_STYLE) != 0) {
+            IconStyle style = getIconStyle();
+            for (int i = 0; i < groups.size(); ++i) {
+                if (iconProviders[i] != null) {
+                    for (PlacemarkMapObject placemark : groups.get(i)) {
+                        placemark.setIconStyle(style);
+                    }
+                }
+            }
+        }
+        if ((dirty & DIRTY_VISIBILITY) != 0) {
+            updateVisibility();
+        }
+        dirty = 0;
+    }
+
+    // all placemarks are created in a single pass, one addPlacemarks call per icon group
+    private void rebuild() {
+        int count = getCount();
+        List<List<Point>> points = new ArrayList<>(icons.length);
+        for (int i = 0; i < icons.length; ++i) {
+            points.add(new ArrayList<Point>());
+        }
+        int[] items = new int[count];
+        for (int i = 0; i < count; ++i) {
+            int icon = getIconIndex(i);
+            Point point = new Point(getLatitude(i), getLongitude(i));
+            if (icon < 0) {
+                PlacemarkMapObject placemark = mapObject.addPlacemark(point);
+                placemark.setUserData(i);
+            } else {
+                points.get(icon).add(point);
+            }
+            items[i] = icon;
+        }
+        IconStyle style = getIconStyle();
+        groups = new ArrayList<>(icons.length);
+        int[] offsets = new int[icons.length];
+        for (int icon = 0; icon < icons.length; ++icon) {
+            List<Point> groupPoints = points.get(icon);
+            if (groupPoints.isEmpty()) {
+                groups.add(new ArrayList<PlacemarkMapObject>());
+                continue;
+            }
+            if (iconProviders[icon] != null) {
+                groups.add(mapObject.addPlacemarks(groupPoints, iconProviders[icon], style));
+            } else {
+                List<PlacemarkMapObject> group = new ArrayList<>(groupPoints.size());
+                for (Point point : groupPoints) {
+                    group.add(mapObject.addPlacemark(point));
+                }
+                groups.add(group);
+            }
+        }
+        // item index for tap lookups
+        for (int i = 0; i < count; ++i) {
+            int icon = items[i];
+            if (icon >= 0) {
+                groups.get(icon).get(offsets[icon]++).setUserData(i);
+            }
+        }
+    }
+
+    private void loadIcon(final int index) {
+        final String source = icons[index];
+        if (source == null || source.equals("")) {
+            return;
+        }
+        final String key = ImageLoader.cacheKey(source, ImageLoader.DecodeOptions.DEFAULT);
+        iconRequests[index] = ImageLoader.DownloadImageBitmap(getContext(), source, ImageLoader.PRIORITY_HIGH, new Callback<Bitmap>() {
+            @Override
+            public void invoke(Bitmap bitmap) {
+                // a dropped load is requested again with the next icons update
+                if (bitmap == null || mapObject == null || index >= iconHandles.length || !source.equals(icons[index])) {
+                    return;
+                }
+                ImageProviderRegistry.Handle handle = ImageProviderRegistry.acquire(key, bitmap);
+                ImageProviderRegistry.release(iconHandles[index]);
+                iconHandles[index] = handle;
+                ImageProvider provider = handle.getProvider();
+                iconProviders[index] = provider;
+                if (index < groups.size()) {
+                    IconStyle style = getIconStyle();
+                    for (PlacemarkMapObject placemark : groups.get(index)) {
+                        placemark.setIcon(provider, style);
+                    }
+                }
+            }
+        });
+    }
+
+    public void releaseIcons() {
+        for (int i = 0; i < iconRequests.length; ++i) {
+            if (iconRequests[i] != null) {
+                iconRequests[i].cancel();
+            }
+        }
+        for (int i = 0; i < iconHandles.length; ++i) {
+            ImageProviderRegistry.release(iconHandles[i]);
+        }
+        iconHandles = new ImageProviderRegistry.Handle[0];
+        iconProviders = new ImageProvider[0];
+        iconRequests = new ImageLoader.Request[0];
+        dirty |= DIRTY_ICONS;
+    }
+
+    public void setCulled(boolean _culled) {
+        if (culled == _culled) {
+            return;
+        }
+        culled = _culled;
+        updateVisibility();
+    }
+
+    public void setMinZoom(float _minZoom) {
+        minZoom = _minZoom;
+        dirty |= DIRTY_VISIBILITY;
+    }
+
+    public void setMaxZoom(float _maxZoom) {
+        maxZoom = _maxZoom;
+        dirty |= DIRTY_VISIBILITY;
+    }
+
+    // called by the map on every camera change, MapKit is touched only when visibility flips
+    public void onCameraZoomChanged(float _zoom) {
+        zoom = _zoom;
+        updateVisibility();
+    }
+
+    private void updateVisibility() {
+        boolean _visible = !culled && zoom >= minZoom && zoom < maxZoom;
+        if (mapObject != null && _visible != visible) {
+            mapObject.setVisible(_visible);
+        }
+        visible = _visible;
+    }
+
+    public void setMapObject(MapObject obj) {
+        mapObject = (MapObjectCollection) obj;
+        // new map objects are visible
+        visible = true;
+        mapObject.addTapListener(this);
+        dirty = DIRTY_ALL;
+        updateCollection();
+    }
+
+    public MapObject getMapObject() {
+        return mapObject;
+    }
+
+    public BoundingBox getBounds() {
+        return GeometryUtils.boundsOf(coordinates, getCount());
+    }
+
+    public boolean isShownOnMap() {
+        return mapObject != null && visible;
+    }
+
+    public boolean hitTest(Point point, double tolerance) {
+        return !getItemIdsAt(point, tolerance).isEmpty();
+    }
+
+    // ids of the items within tolerance meters, in item order. Only the items in the
+    // box around the point are measured
+    public List<String> getItemIdsAt(Point point, double tolerance) {
+        if (itemIndex == null) {
+            itemIndex = new QuadTree<>();
+            for (int i = 0; i < getCount(); ++i) {
+                itemIndex.put(i, getLatitude(i), getLongitude(i), getLatitude(i), getLongitude(i));
+            }
+        }
+        BoundingBox box = GeometryUtils.boundsOf(point, tolerance);
+        List<Integer> candidates = itemIndex.query(box.getSouthWest().getLatitude(), box.getSouthWest().getLongitude(),
+                box.getNorthEast().getLatitude(), box.getNorthEast().getLongitude());
+        Collections.sort(candidates);
+        ArrayList<String> result = new ArrayList<>();
+        for (int i : candidates) {
+            if (GeometryUtils.distance(getLatitude(i), getLongitude(i), point.getLatitude(), point.getLongitude()) <= tolerance) {
+                result.add(getItemId(i));
+            }
+        }
+        return result;
+    }
+
+    // the collection keeps its own tap listener for onItemPress
+    @Override
+    public boolean onMapObjectTap(@NonNull MapObject mapObject, @NonNull Point point) {
+        Object index = mapObject.getUserData();
+        if (!(index instanceof Integer)) {
+            return false;
+        }
+        Events.dispatch(this, MapObjectPressEvent.obtain(getId(), MapObjectPressEvent.EVENT_ITEM_PRESS, getItemId((Integer) index)));
+        return false;
+    }
+}
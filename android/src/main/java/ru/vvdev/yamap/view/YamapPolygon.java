@@ -4,24 +4,22 @@ import android.content.Context;
 import android.graphics.Color;
 import android.view.ViewGroup;
 
-import androidx.annotation.NonNull;
-
-import com.facebook.react.bridge.Arguments;
-import com.facebook.react.bridge.ReactContext;
-import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.uimanager.events.RCTEventEmitter;
+import com.yandex.mapkit.geometry.BoundingBox;
 import com.yandex.mapkit.geometry.LinearRing;
 import com.yandex.mapkit.geometry.Point;
 import com.yandex.mapkit.geometry.Polygon;
 import com.yandex.mapkit.map.MapObject;
-import com.yandex.mapkit.map.MapObjectTapListener;
 import com.yandex.mapkit.map.PolygonMapObject;
 
 import java.util.ArrayList;
 
 import ru.vvdev.yamap.models.ReactMapObject;
+import ru.vvdev.yamap.utils.Callback;
+import ru.vvdev.yamap.utils.GeometryUtils;
+import ru.vvdev.yamap.utils.GeometryWorker;
+import ru.vvdev.yamap.utils.UpdateStats;
 
-public class YamapPolygon extends ViewGroup implements MapObjectTapListener, ReactMapObject {
+public class YamapPolygon extends ViewGroup implements ReactMapObject {
     public Polygon polygon;
     public ArrayList<Point> _points = new ArrayList<>();
     ArrayList<ArrayList<Point>> innerRings = new ArrayList<>();
@@ -30,10 +28,42 @@ public class YamapPolygon extends ViewGroup implements MapObjectTapListener, Rea
     private int strokeColor = Color.BLACK;
     private int zIndex = 1;
     private float strokeWidth = 1.f;
+    private boolean culled = false;
+    // shown while minZoom <= zoom < maxZoom
+    private float minZoom = 0;
+    private float maxZoom = Float.MAX_VALUE;
+    private float zoom = 0;
+    private boolean visible = true;
+
+    // large props are parsed together with the geometry on the worker
+    private GeometryWorker.Task<ArrayList<Point>> pointsSource = null;
+    private GeometryWorker.Task<ArrayList<ArrayList<Point>>> innerRingsSource = null;
+    private GeometryWorker.Job geometryJob = null;
+
+    private static class Geometry {
+        ArrayList<Point> points;
+        ArrayList<ArrayList<Point>> innerRings;
+        Polygon polygon;
+        long hash;
+    }
+
+    // content hash of the geometry in polygon, an identical re-render is not uploaded again
+    private long geometryHash;
+
+    // fields changed since the last flush to MapKit
+    private static final int DIRTY_GEOMETRY = 1;
+    private static final int DIRTY_STROKE_WIDTH = 1 << 1;
+    private static final int DIRTY_STROKE_COLOR = 1 << 2;
+    private static final int DIRTY_FILL_COLOR = 1 << 3;
+    private static final int DIRTY_Z_INDEX = 1 << 4;
+    private static final int DIRTY_VISIBILITY = 1 << 5;
+    private static final int DIRTY_ALL = (1 << 6) - 1;
+    private int dirty = DIRTY_ALL;
 
     public YamapPolygon(Context context) {
         super(context);
         polygon = new Polygon(new LinearRing(new ArrayList<Point>()), new ArrayList<LinearRing>());
+        geometryHash = hashOf(_points, innerRings);
     }
 
     @Override
@@ -43,59 +73,217 @@ public class YamapPolygon extends ViewGroup implements MapObjectTapListener, Rea
     // props
     public void setPolygonPoints(ArrayList<Point> points) {
         _points = (points !=  null) ? points :new ArrayList<Point>();
-        updatePolygonGeometry();
-        updatePolygon();
+        pointsSource = null;
+        dirty |= DIRTY_GEOMETRY;
     }
 
     public void setInnerRings(ArrayList<ArrayList<Point>> _innerRings) {
         innerRings = _innerRings != null ? _innerRings : new ArrayList<ArrayList<Point>>();
-        updatePolygonGeometry();
-        updatePolygon();
+        innerRingsSource = null;
+        dirty |= DIRTY_GEOMETRY;
     }
 
-    private void updatePolygonGeometry() {
+    public void loadPolygonPoints(GeometryWorker.Task<ArrayList<Point>> parser) {
+        pointsSource = parser;
+        dirty |= DIRTY_GEOMETRY;
+    }
+
+    public void loadInnerRings(GeometryWorker.Task<ArrayList<ArrayList<Point>>> parser) {
+        innerRingsSource = parser;
+        dirty |= DIRTY_GEOMETRY;
+    }
+
+    private static Polygon createPolygon(ArrayList<Point> points, ArrayList<ArrayList<Point>> innerRings) {
         ArrayList<LinearRing> _rings = new ArrayList<>();
         if (innerRings != null) {
             for (int i = 0; i < innerRings.size(); ++i) {
                 _rings.add(new LinearRing(innerRings.get(i)));
             }
         }
-        polygon = new Polygon(new LinearRing(_points), _rings);
+        return new Polygon(new LinearRing(points), _rings);
+    }
+
+    private static long hashOf(ArrayList<Point> points, ArrayList<ArrayList<Point>> innerRings) {
+        long hash = GeometryUtils.hash(GeometryUtils.HASH_SEED, points);
+        if (innerRings == null) {
+            return hash;
+        }
+        for (ArrayList<Point> ring : innerRings) {
+            hash = GeometryUtils.hash(hash, ring);
+        }
+        return GeometryUtils.hash(hash, innerRings.size());
+    }
+
+    private int getPointCount() {
+        int count = _points.size();
+        for (ArrayList<Point> ring : innerRings) {
+            count += ring.size();
+        }
+        return count;
+    }
+
+    // small polygons are built in place, large ones and pending props on the worker.
+    // A newer geometry cancels the job of the previous one
+    private void updatePolygonGeometry() {
+        GeometryWorker.cancel(geometryJob);
+        geometryJob = null;
+        if (pointsSource == null && innerRingsSource == null && getPointCount() < GeometryWorker.MIN_ASYNC_SIZE) {
+            long hash = hashOf(_points, innerRings);
+            if (hash == geometryHash) {
+                UpdateStats.geometrySkipped();
+                return;
+            }
+            applyGeometry(createPolygon(_points, innerRings), hash);
+            return;
+        }
+        final long previousHash = geometryHash;
+        final GeometryWorker.Task<ArrayList<Point>> _pointsSource = pointsSource;
+        final GeometryWorker.Task<ArrayList<ArrayList<Point>>> _innerRingsSource = innerRingsSource;
+        final ArrayList<Point> points = _points;
+        final ArrayList<ArrayList<Point>> rings = innerRings;
+        geometryJob = GeometryWorker.submit(new GeometryWorker.Task<Geometry>() {
+            @Override
+            public Geometry run() {
+                Geometry geometry = new Geometry();
+                geometry.points = _pointsSource != null ? _pointsSource.run() : points;
+                geometry.innerRings = _innerRingsSource != null ? _innerRingsSource.run() : rings;
+                geometry.hash = hashOf(geometry.points, geometry.innerRings);
+                // the same geometry is not built again
+                if (geometry.hash != previousHash) {
+                    geometry.polygon = createPolygon(geometry.points, geometry.innerRings);
+                }
+                return geometry;
+            }
+        }, new Callback<Geometry>() {
+            @Override
+            public void invoke(Geometry geometry) {
+                geometryJob = null;
+                _points = geometry.points;
+                innerRings = geometry.innerRings;
+                pointsSource = null;
+                innerRingsSource = null;
+                if (geometry.polygon == null) {
+                    UpdateStats.geometrySkipped();
+                    return;
+                }
+                applyGeometry(geometry.polygon, geometry.hash);
+            }
+        });
+    }
+
+    // only this part runs on the UI thread
+    private void applyGeometry(Polygon _polygon, long hash) {
+        polygon = _polygon;
+        geometryHash = hash;
+        if (mapObject == null || !(getParent() instanceof YamapView)) {
+            // not on the map yet, the map object will be created with this geometry
+            return;
+        }
+        UpdateStats.applied(1);
+        mapObject.setGeometry(polygon);
+        ((YamapView) getParent()).onChildGeometryChanged(this);
     }
 
     public void setZIndex(int _zIndex) {
-        zIndex = _zIndex;
-        updatePolygon();
+        if (UpdateStats.changed(zIndex, _zIndex)) {
+            zIndex = _zIndex;
+            dirty |= DIRTY_Z_INDEX;
+        }
     }
 
     public void setStrokeColor(int _color) {
-        strokeColor = _color;
-        updatePolygon();
+        if (UpdateStats.changed(strokeColor, _color)) {
+            strokeColor = _color;
+            dirty |= DIRTY_STROKE_COLOR;
+        }
     }
 
     public void setFillColor(int _color) {
-        fillColor = _color;
-        updatePolygon();
+        if (UpdateStats.changed(fillColor, _color)) {
+            fillColor = _color;
+            dirty |= DIRTY_FILL_COLOR;
+        }
     }
 
     public void setStrokeWidth(float width) {
-        strokeWidth = width;
-        updatePolygon();
+        if (UpdateStats.changed(strokeWidth, width)) {
+            strokeWidth = width;
+            dirty |= DIRTY_STROKE_WIDTH;
+        }
     }
 
-    private void updatePolygon() {
-        if (mapObject != null) {
-            mapObject.setGeometry(polygon);
+    // called once per React update transaction, pushes only the changed fields
+    public void updatePolygon() {
+        if ((dirty & DIRTY_GEOMETRY) != 0) {
+            // rings are rebuilt once per transaction, even if both points and innerRings changed
+            updatePolygonGeometry();
+            dirty &= ~DIRTY_GEOMETRY;
+        }
+        if (mapObject == null || dirty == 0) {
+            return;
+        }
+        // visibility is pushed only when it flips, see updateVisibility
+        UpdateStats.applied(Integer.bitCount(dirty & ~DIRTY_VISIBILITY));
+        if ((dirty & DIRTY_STROKE_WIDTH) != 0) {
             mapObject.setStrokeWidth(strokeWidth);
+        }
+        if ((dirty & DIRTY_STROKE_COLOR) != 0) {
             mapObject.setStrokeColor(strokeColor);
+        }
+        if ((dirty & DIRTY_FILL_COLOR) != 0) {
             mapObject.setFillColor(fillColor);
+        }
+        if ((dirty & DIRTY_Z_INDEX) != 0) {
             mapObject.setZIndex(zIndex);
         }
+        if ((dirty & DIRTY_VISIBILITY) != 0) {
+            updateVisibility();
+        }
+        dirty = 0;
+    }
+
+    public void setCulled(boolean _culled) {
+        if (culled == _culled) {
+            return;
+        }
+        culled = _culled;
+        updateVisibility();
+    }
+
+    public void setMinZoom(float _minZoom) {
+        if (UpdateStats.changed(minZoom, _minZoom)) {
+            minZoom = _minZoom;
+            dirty |= DIRTY_VISIBILITY;
+        }
+    }
+
+    public void setMaxZoom(float _maxZoom) {
+        if (UpdateStats.changed(maxZoom, _maxZoom)) {
+            maxZoom = _maxZoom;
+            dirty |= DIRTY_VISIBILITY;
+        }
+    }
+
+    // called by the map on every camera change, MapKit is touched only when visibility flips
+    public void onCameraZoomChanged(float _zoom) {
+        zoom = _zoom;
+        updateVisibility();
+    }
+
+    private void updateVisibility() {
+        boolean _visible = !culled && zoom >= minZoom && zoom < maxZoom;
+        if (mapObject != null && _visible != visible) {
+            mapObject.setVisible(_visible);
+        }
+        visible = _visible;
     }
 
     public void setMapObject(MapObject obj) {
         mapObject = (PolygonMapObject) obj;
-        mapObject.addTapListener(this);
+        // new map objects are visible
+        visible = true;
+        // the map object is created with the current geometry
+        dirty = DIRTY_ALL & ~DIRTY_GEOMETRY;
         updatePolygon();
     }
 
@@ -103,10 +291,26 @@ public class YamapPolygon extends ViewGroup implements MapObjectTapListener, Rea
         return mapObject;
     }
 
-    @Override
-    public boolean onMapObjectTap(@NonNull MapObject mapObject, @NonNull Point point) {
-        WritableMap e = Arguments.createMap();
-        ((ReactContext) getContext()).getJSModule(RCTEventEmitter.class).receiveEvent(getId(), "onPress", e);
-        return false;
+    public BoundingBox getBounds() {
+        return GeometryUtils.boundsOf(_points);
+    }
+
+    public boolean isShownOnMap() {
+        return mapObject != null && visible;
+    }
+
+    // inside the outer ring and outside the holes, or close enough to a border
+    public boolean hitTest(Point point, double tolerance) {
+        double lat = point.getLatitude();
+        double lon = point.getLongitude();
+        if (!GeometryUtils.containsPoint(_points, lat, lon)) {
+            return GeometryUtils.distanceToLine(_points, lat, lon, true) <= tolerance;
+        }
+        for (ArrayList<Point> ring : innerRings) {
+            if (GeometryUtils.containsPoint(ring, lat, lon)) {
+                return GeometryUtils.distanceToLine(ring, lat, lon, true) <= tolerance;
+            }
+        }
+        return true;
     }
 }
@@ -4,25 +4,33 @@ import android.content.Context;
 import android.graphics.Color;
 import android.view.ViewGroup;
 
-import androidx.annotation.NonNull;
-
-import com.facebook.react.bridge.Arguments;
-import com.facebook.react.bridge.ReactContext;
-import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.uimanager.events.RCTEventEmitter;
+import com.yandex.mapkit.geometry.BoundingBox;
 import com.yandex.mapkit.geometry.Point;
 import com.yandex.mapkit.geometry.Polyline;
+import com.yandex.mapkit.geometry.PolylinePosition;
+import com.yandex.mapkit.geometry.Subpolyline;
+import com.yandex.mapkit.geometry.SubpolylineHelper;
 import com.yandex.mapkit.map.MapObject;
-import com.yandex.mapkit.map.MapObjectTapListener;
 import com.yandex.mapkit.map.PolylineMapObject;
 
 import java.util.ArrayList;
 
 import ru.vvdev.yamap.models.ReactMapObject;
+import ru.vvdev.yamap.utils.Callback;
+import ru.vvdev.yamap.utils.CoordinateBuffer;
+import ru.vvdev.yamap.utils.GeometryUtils;
+import ru.vvdev.yamap.utils.GeometryWorker;
+import ru.vvdev.yamap.utils.PolylineLevels;
+import ru.vvdev.yamap.utils.PolylineSimplifier;
+import ru.vvdev.yamap.utils.RouteIndex;
+import ru.vvdev.yamap.utils.UpdateStats;
 
-public class YamapPolyline extends ViewGroup implements MapObjectTapListener, ReactMapObject {
-    public Polyline polyline;
-    public ArrayList<Point> _points = new ArrayList<>();
+public class YamapPolyline extends ViewGroup implements ReactMapObject {
+    // growable storage, so live tracks can be appended to and trimmed in place
+    private final CoordinateBuffer points = new CoordinateBuffer();
+    // content hash of the points, recomputed lazily after appends and trims
+    private long geometryHash = 0;
+    private boolean geometryHashValid = false;
     private PolylineMapObject mapObject;
     private int outlineColor = Color.BLACK;
     private int strokeColor = Color.BLACK;
@@ -32,10 +40,58 @@ public class YamapPolyline extends ViewGroup implements MapObjectTapListener, Re
     private int gapLength = 0;
     private float dashOffset = 0;
     private int outlineWidth = 0;
+    private boolean culled = false;
+    // shown while minZoom <= zoom < maxZoom
+    private float minZoom = 0;
+    private float maxZoom = Float.MAX_VALUE;
+    private boolean visible = true;
+
+    // points parsed off the UI thread
+    private GeometryWorker.Job pointsJob = null;
+
+    // source index of the first point, counted from the start of the route before any
+    // trims. Levels and the route index follow appends and trims incrementally
+    private int trimmedPoints = 0;
+
+    // level of detail, off while the tolerance is 0
+    private float simplificationTolerance = 0;
+    private PolylineLevels levels = null;
+    private int levelBucket = -1;
+    private GeometryWorker.Job levelsJob = null;
+    private float zoom = 0;
+
+    // route progress, the travelled part is a second map object drawn in travelledColor
+    private int travelledColor = Color.GRAY;
+    private PolylineMapObject travelledObject = null;
+    // built on the first use after a geometry change
+    private RouteIndex routeIndex = null;
+    // -1 while there is no progress
+    private int progressSegment = -1;
+    private double progressFraction = 0;
+
+    // fields changed since the last flush to MapKit
+    private static final int DIRTY_GEOMETRY = 1;
+    private static final int DIRTY_STROKE_WIDTH = 1 << 1;
+    private static final int DIRTY_STROKE_COLOR = 1 << 2;
+    private static final int DIRTY_Z_INDEX = 1 << 3;
+    private static final int DIRTY_DASH_LENGTH = 1 << 4;
+    private static final int DIRTY_GAP_LENGTH = 1 << 5;
+    private static final int DIRTY_DASH_OFFSET = 1 << 6;
+    private static final int DIRTY_OUTLINE_COLOR = 1 << 7;
+    private static final int DIRTY_OUTLINE_WIDTH = 1 << 8;
+    private static final int DIRTY_VISIBILITY = 1 << 9;
+    private static final int DIRTY_TRAVELLED_COLOR = 1 << 10;
+    private static final int DIRTY_ALL = (1 << 11) - 1;
+    private int dirty = DIRTY_ALL;
 
     public YamapPolyline(Context context) {
         super(context);
-        polyline = new Polyline(new ArrayList<Point>());
+    }
+
+    // MapKit copies the points into the Polyline, so a new one is built from the buffer
+    // every time the geometry is pushed and none is kept across appends and trims
+    public Polyline getPolyline() {
+        return new Polyline(points.asPoints());
     }
 
     @Override
@@ -43,80 +99,483 @@ public class YamapPolyline extends ViewGroup implements MapObjectTapListener, Re
     }
 
     // props
-    public void setPolygonPoints(ArrayList<Point> points) {
-        _points = points != null ? points : new ArrayList<Point>();
-        polyline = new Polyline(_points);
+    public void setPolygonPoints(ArrayList<Point> _points) {
+        GeometryWorker.cancel(pointsJob);
+        if (_points == null) {
+            _points = new ArrayList<>();
+        }
+        long hash = GeometryUtils.hash(GeometryUtils.HASH_SEED, _points);
+        if (isSameGeometry(_points.size(), hash)) {
+            return;
+        }
+        points.set(_points);
+        onRouteReplaced(hash);
+    }
+
+    public void setCoordinates(double[] coordinates) {
+        GeometryWorker.cancel(pointsJob);
+        long hash = GeometryUtils.hash(GeometryUtils.HASH_SEED, coordinates);
+        if (isSameGeometry(coordinates.length / 2, hash)) {
+            return;
+        }
+        points.set(coordinates);
+        onRouteReplaced(hash);
+    }
+
+    // a re-render with the same points keeps the geometry, its index and the progress,
+    // MapKit is not called
+    private boolean isSameGeometry(int count, long hash) {
+        if (count != points.size()) {
+            return false;
+        }
+        if (!geometryHashValid) {
+            geometryHash = points.hash();
+            geometryHashValid = true;
+        }
+        if (hash != geometryHash) {
+            return false;
+        }
+        UpdateStats.geometrySkipped();
+        return true;
+    }
+
+    // large props are parsed on the worker, a newer value cancels the pending one
+    public void loadCoordinates(GeometryWorker.Task<double[]> parser) {
+        GeometryWorker.cancel(pointsJob);
+        pointsJob = GeometryWorker.submit(parser, new Callback<double[]>() {
+            @Override
+            public void invoke(double[] coordinates) {
+                setCoordinates(coordinates);
+                updatePolyline();
+            }
+        });
+    }
+
+    // commands, applied right away since they do not come with an update transaction.
+    // maxPoints > 0 drops the oldest points above the limit. Only the appended points
+    // are indexed and simplified, the whole line is not processed again
+    public void appendPoints(double[] coordinates, int maxPoints) {
+        points.append(coordinates);
+        geometryHashValid = false;
+        if (routeIndex != null) {
+            routeIndex.onAppended();
+        }
+        if (levels != null) {
+            levels.append(coordinates);
+        }
+        if (maxPoints > 0 && points.size() > maxPoints) {
+            trimStart(points.size() - maxPoints);
+        }
+        onPointsChanged();
+    }
+
+    public void trimPoints(int count) {
+        trimStart(count);
+        onPointsChanged();
+    }
+
+    private void trimStart(int count) {
+        count = Math.max(0, Math.min(count, points.size()));
+        if (count == 0) {
+            return;
+        }
+        points.trimStart(count);
+        trimmedPoints += count;
+        geometryHashValid = false;
+        if (routeIndex != null) {
+            routeIndex.onTrimmed(count);
+        }
+        if (levels != null) {
+            levels.trimTo(trimmedPoints, getFirstLatitude(), getFirstLongitude());
+        }
+        onPointsTrimmed(count);
+    }
+
+    private double getFirstLatitude() {
+        return points.size() > 0 ? points.getLatitude(0) : 0;
+    }
+
+    private double getFirstLongitude() {
+        return points.size() > 0 ? points.getLongitude(0) : 0;
+    }
+
+    // pushes the line after an append or trim. While the levels of a new geometry are
+    // still computed the raw points are shown, so appended points appear right away
+    private void onPointsChanged() {
+        if (mapObject != null) {
+            UpdateStats.applied(1);
+            if (progressSegment >= 0) {
+                applyProgress();
+            } else if (levels != null) {
+                applyLevel();
+            } else {
+                mapObject.setGeometry(getPolyline());
+            }
+            if (getParent() instanceof YamapView) {
+                ((YamapView) getParent()).onChildGeometryChanged(this);
+            }
+        }
         updatePolyline();
     }
 
+    // progress commands. The position is projected onto the nearest segment of the route
+    public void setProgressPosition(double lat, double lon) {
+        setProgress(getRouteIndex().project(lat, lon));
+    }
+
+    // meters from the start of the route
+    public void setProgressDistance(double distance) {
+        setProgress(getRouteIndex().positionAt(distance));
+    }
+
+    public void clearProgress() {
+        if (progressSegment < 0) {
+            return;
+        }
+        progressSegment = -1;
+        applyProgress();
+    }
+
+    private void setProgress(RouteIndex.Position position) {
+        if (position == null) {
+            return;
+        }
+        progressSegment = position.segment;
+        progressFraction = position.fraction;
+        applyProgress();
+    }
+
+    private RouteIndex getRouteIndex() {
+        if (routeIndex == null) {
+            routeIndex = new RouteIndex(points);
+        }
+        return routeIndex;
+    }
+
+    // a new route starts without progress
+    private void onRouteReplaced(long hash) {
+        trimmedPoints = 0;
+        geometryHash = hash;
+        geometryHashValid = true;
+        routeIndex = null;
+        progressSegment = -1;
+        // the travelled part of the old route is not drawn over the new one
+        releaseProgress();
+        dirty |= DIRTY_GEOMETRY;
+    }
+
+    // keeps the progress on the same spot of the route when points are dropped from the start
+    private void onPointsTrimmed(int count) {
+        if (progressSegment < 0 || count == 0) {
+            return;
+        }
+        progressSegment -= count;
+        if (progressSegment < 0) {
+            progressSegment = 0;
+            progressFraction = 0;
+        }
+    }
+
     public void setZIndex(int _zIndex) {
-        zIndex = _zIndex;
-        updatePolyline();
+        if (UpdateStats.changed(zIndex, _zIndex)) {
+            zIndex = _zIndex;
+            dirty |= DIRTY_Z_INDEX;
+        }
     }
 
     public void setStrokeColor(int _color) {
-        strokeColor = _color;
-        updatePolyline();
+        if (UpdateStats.changed(strokeColor, _color)) {
+            strokeColor = _color;
+            dirty |= DIRTY_STROKE_COLOR;
+        }
     }
 
     public void setDashLength(int length) {
-        dashLength = length;
-        updatePolyline();
+        if (UpdateStats.changed(dashLength, length)) {
+            dashLength = length;
+            dirty |= DIRTY_DASH_LENGTH;
+        }
     }
 
     public void setDashOffset(float offset) {
-        dashOffset = offset;
-        updatePolyline();
+        if (UpdateStats.changed(dashOffset, offset)) {
+            dashOffset = offset;
+            dirty |= DIRTY_DASH_OFFSET;
+        }
     }
 
     public void setGapLength(int length) {
-        gapLength = length;
-        updatePolyline();
+        if (UpdateStats.changed(gapLength, length)) {
+            gapLength = length;
+            dirty |= DIRTY_GAP_LENGTH;
+        }
     }
 
     public void setOutlineWidth(int width) {
-        outlineWidth = width;
-        updatePolyline();
+        if (UpdateStats.changed(outlineWidth, width)) {
+            outlineWidth = width;
+            dirty |= DIRTY_OUTLINE_WIDTH;
+        }
     }
 
     public void setOutlineColor(int color) {
-        outlineColor = color;
-        updatePolyline();
+        if (UpdateStats.changed(outlineColor, color)) {
+            outlineColor = color;
+            dirty |= DIRTY_OUTLINE_COLOR;
+        }
+    }
+
+    public void setTravelledStrokeColor(int color) {
+        if (UpdateStats.changed(travelledColor, color)) {
+            travelledColor = color;
+            dirty |= DIRTY_TRAVELLED_COLOR;
+        }
     }
 
     public void setStrokeWidth(float width) {
-        strokeWidth = width;
-        updatePolyline();
+        if (UpdateStats.changed(strokeWidth, width)) {
+            strokeWidth = width;
+            dirty |= DIRTY_STROKE_WIDTH;
+        }
     }
 
-    private void updatePolyline() {
-        if (mapObject != null) {
-            mapObject.setGeometry(polyline);
+    // max deviation of the simplified line in pixels, 0 draws the raw points
+    public void setSimplificationTolerance(float tolerance) {
+        if (tolerance != simplificationTolerance) {
+            simplificationTolerance = Math.max(0, tolerance);
+            dirty |= DIRTY_GEOMETRY;
+        }
+    }
+
+    // called by the map on every camera change, the detail level is switched only
+    // when the zoom crosses a bucket boundary
+    public void onCameraZoomChanged(float _zoom) {
+        zoom = _zoom;
+        updateVisibility();
+        if (levels != null && progressSegment < 0 && PolylineSimplifier.getBucket(zoom) != levelBucket) {
+            applyLevel();
+        }
+    }
+
+    private void applyLevel() {
+        // the progress split always uses the raw points
+        if (progressSegment >= 0) {
+            return;
+        }
+        levelBucket = PolylineSimplifier.getBucket(zoom);
+        Polyline level = levels.getLevel(levelBucket);
+        mapObject.setGeometry(level != null ? level : getPolyline());
+    }
+
+    // levels for every zoom bucket are computed once per geometry, off the UI thread,
+    // and then extended by appends
+    private void simplify() {
+        GeometryWorker.cancel(levelsJob);
+        levels = null;
+        if (simplificationTolerance <= 0) {
+            return;
+        }
+        // the buffer changes in place, the worker gets a copy
+        final double[] coordinates = points.toArray();
+        final int first = trimmedPoints;
+        final float tolerance = simplificationTolerance;
+        levelsJob = GeometryWorker.submit(new GeometryWorker.Task<PolylineLevels>() {
+            @Override
+            public PolylineLevels run() {
+                PolylineLevels _levels = new PolylineLevels(tolerance, first);
+                _levels.append(coordinates);
+                return _levels;
+            }
+        }, new Callback<PolylineLevels>() {
+            @Override
+            public void invoke(PolylineLevels _levels) {
+                if (mapObject == null || getParent() == null) {
+                    return;
+                }
+                // points appended or trimmed while the levels were computed
+                _levels.trimTo(trimmedPoints, getFirstLatitude(), getFirstLongitude());
+                int from = _levels.getEnd() - trimmedPoints;
+                if (from < points.size()) {
+                    double[] tail = new double[(points.size() - from) * 2];
+                    for (int i = from; i < points.size(); ++i) {
+                        tail[(i - from) * 2] = points.getLatitude(i);
+                        tail[(i - from) * 2 + 1] = points.getLongitude(i);
+                    }
+                    _levels.append(tail);
+                }
+                levels = _levels;
+                applyLevel();
+            }
+        });
+    }
+
+    // called once per React update transaction, pushes only the changed fields
+    public void updatePolyline() {
+        if (mapObject == null || dirty == 0) {
+            return;
+        }
+        // visibility is pushed only when it flips, see updateVisibility
+        UpdateStats.applied(Integer.bitCount(dirty & ~DIRTY_VISIBILITY));
+        if ((dirty & DIRTY_GEOMETRY) != 0) {
+            simplify();
+            // with simplification on the previous geometry stays until the levels are ready
+            if (progressSegment >= 0) {
+                applyProgress();
+            } else if (simplificationTolerance <= 0) {
+                // MapKit has no partial geometry update, the whole line is passed on
+                mapObject.setGeometry(getPolyline());
+            }
+            if (getParent() instanceof YamapView) {
+                ((YamapView) getParent()).onChildGeometryChanged(this);
+            }
+        }
+        if ((dirty & DIRTY_STROKE_WIDTH) != 0) {
             mapObject.setStrokeWidth(strokeWidth);
+        }
+        if ((dirty & DIRTY_STROKE_COLOR) != 0) {
             mapObject.setStrokeColor(strokeColor);
+        }
+        if ((dirty & DIRTY_Z_INDEX) != 0) {
             mapObject.setZIndex(zIndex);
+        }
+        if ((dirty & DIRTY_DASH_LENGTH) != 0) {
             mapObject.setDashLength(dashLength);
+        }
+        if ((dirty & DIRTY_GAP_LENGTH) != 0) {
             mapObject.setGapLength(gapLength);
+        }
+        if ((dirty & DIRTY_DASH_OFFSET) != 0) {
             mapObject.setDashOffset(dashOffset);
+        }
+        if ((dirty & DIRTY_OUTLINE_COLOR) != 0) {
             mapObject.setOutlineColor(outlineColor);
+        }
+        if ((dirty & DIRTY_OUTLINE_WIDTH) != 0) {
             mapObject.setOutlineWidth(outlineWidth);
         }
+        if ((dirty & DIRTY_VISIBILITY) != 0) {
+            updateVisibility();
+        }
+        if (travelledObject != null && (dirty & ~(DIRTY_GEOMETRY | DIRTY_VISIBILITY)) != 0) {
+            styleTravelled();
+        }
+        dirty = 0;
+    }
+
+    // the main map object shows the remaining part of the route, the travelled part
+    // gets its own map object with the same style and travelledColor
+    private void applyProgress() {
+        if (mapObject == null) {
+            return;
+        }
+        if (points.size() < 2) {
+            progressSegment = -1;
+        }
+        if (progressSegment < 0) {
+            releaseProgress();
+            if (levels != null) {
+                applyLevel();
+            } else {
+                mapObject.setGeometry(getPolyline());
+            }
+            return;
+        }
+        // cut from the current points, not from a line built before the last append or trim
+        Polyline polyline = getPolyline();
+        PolylinePosition position = new PolylinePosition(progressSegment, progressFraction);
+        Polyline travelled = SubpolylineHelper.subpolyline(polyline, new Subpolyline(new PolylinePosition(0, 0), position));
+        Polyline remaining = SubpolylineHelper.subpolyline(polyline, new Subpolyline(position, new PolylinePosition(points.size() - 2, 1)));
+        mapObject.setGeometry(remaining);
+        if (travelledObject == null) {
+            travelledObject = mapObject.getParent().addPolyline(travelled);
+            // taps on it are reported as taps on this line
+            travelledObject.setUserData(this);
+            travelledObject.setVisible(visible);
+            styleTravelled();
+        } else {
+            travelledObject.setGeometry(travelled);
+        }
+    }
+
+    private void styleTravelled() {
+        travelledObject.setStrokeWidth(strokeWidth);
+        travelledObject.setStrokeColor(travelledColor);
+        travelledObject.setZIndex(zIndex);
+        travelledObject.setDashLength(dashLength);
+        travelledObject.setGapLength(gapLength);
+        travelledObject.setDashOffset(dashOffset);
+        travelledObject.setOutlineColor(outlineColor);
+        travelledObject.setOutlineWidth(outlineWidth);
+    }
+
+    // removes the travelled part from the map, the progress itself is kept
+    public void releaseProgress() {
+        if (travelledObject != null) {
+            travelledObject.getParent().remove(travelledObject);
+            travelledObject = null;
+        }
+    }
+
+    public void setCulled(boolean _culled) {
+        if (culled == _culled) {
+            return;
+        }
+        culled = _culled;
+        updateVisibility();
+    }
+
+    public void setMinZoom(float _minZoom) {
+        if (UpdateStats.changed(minZoom, _minZoom)) {
+            minZoom = _minZoom;
+            dirty |= DIRTY_VISIBILITY;
+        }
+    }
+
+    public void setMaxZoom(float _maxZoom) {
+        if (UpdateStats.changed(maxZoom, _maxZoom)) {
+            maxZoom = _maxZoom;
+            dirty |= DIRTY_VISIBILITY;
+        }
+    }
+
+    private void updateVisibility() {
+        boolean _visible = !culled && zoom >= minZoom && zoom < maxZoom;
+        if (mapObject != null && _visible != visible) {
+            mapObject.setVisible(_visible);
+            if (travelledObject != null) {
+                travelledObject.setVisible(_visible);
+            }
+        }
+        visible = _visible;
     }
 
     public void setMapObject(MapObject obj) {
         mapObject = (PolylineMapObject) obj;
-        mapObject.addTapListener(this);
+        // new map objects are visible
+        visible = true;
+        // the map object is created with the current geometry
+        dirty = DIRTY_ALL & ~DIRTY_GEOMETRY;
         updatePolyline();
+        simplify();
+        if (progressSegment >= 0) {
+            applyProgress();
+        }
     }
 
     public MapObject getMapObject() {
         return mapObject;
     }
 
-    @Override
-    public boolean onMapObjectTap(@NonNull MapObject mapObject, @NonNull Point point) {
-        WritableMap e = Arguments.createMap();
-        ((ReactContext) getContext()).getJSModule(RCTEventEmitter.class).receiveEvent(getId(), "onPress", e);
-        return false;
+    public BoundingBox getBounds() {
+        return points.getBounds();
+    }
+
+    public boolean isShownOnMap() {
+        return mapObject != null && visible;
+    }
+
+    // the nearest segment comes from the route index, the same one the progress uses
+    public boolean hitTest(Point point, double tolerance) {
+        return getRouteIndex().distanceTo(point.getLatitude(), point.getLongitude()) <= tolerance;
     }
 }
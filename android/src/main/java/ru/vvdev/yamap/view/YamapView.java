@@ -3,30 +3,33 @@ package ru.vvdev.yamap.view;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.os.SystemClock;
 import android.view.View;
 
 import androidx.annotation.NonNull;
 
 import com.facebook.react.bridge.Arguments;
-import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.WritableNativeArray;
-import com.facebook.react.uimanager.events.RCTEventEmitter;
+import com.facebook.react.uimanager.util.ReactFindViewUtil;
 import com.yandex.mapkit.Animation;
 import com.yandex.mapkit.MapKitFactory;
 import com.yandex.mapkit.RequestPoint;
 import com.yandex.mapkit.RequestPointType;
+import com.yandex.mapkit.ScreenPoint;
 import com.yandex.mapkit.geometry.BoundingBox;
+import com.yandex.mapkit.geometry.Geo;
 import com.yandex.mapkit.geometry.Point;
-import com.yandex.mapkit.geometry.Polyline;
-import com.yandex.mapkit.geometry.SubpolylineHelper;
 import com.yandex.mapkit.layers.ObjectEvent;
 import com.yandex.mapkit.map.CameraListener;
 import com.yandex.mapkit.map.CameraPosition;
 import com.yandex.mapkit.map.CameraUpdateReason;
 import com.yandex.mapkit.map.CircleMapObject;
 import com.yandex.mapkit.map.InputListener;
+import com.yandex.mapkit.map.MapObject;
+import com.yandex.mapkit.map.MapObjectCollection;
+import com.yandex.mapkit.map.MapObjectTapListener;
 import com.yandex.mapkit.map.PlacemarkMapObject;
 import com.yandex.mapkit.map.PolygonMapObject;
 import com.yandex.mapkit.map.PolylineMapObject;
@@ -44,15 +47,23 @@ import com.yandex.mapkit.traffic.TrafficLevel;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import ru.vvdev.yamap.events.CameraPositionEvent;
+import ru.vvdev.yamap.events.Events;
+import ru.vvdev.yamap.events.MapDataEvent;
+import ru.vvdev.yamap.events.MapObjectPressEvent;
+import ru.vvdev.yamap.events.MapPointEvent;
 import ru.vvdev.yamap.models.ReactMapObject;
 import ru.vvdev.yamap.utils.Callback;
+import ru.vvdev.yamap.utils.GeometryUtils;
 import ru.vvdev.yamap.utils.ImageLoader;
+import ru.vvdev.yamap.utils.QuadTree;
 import ru.vvdev.yamap.utils.RouteManager;
 
 public class YamapView extends MapView implements UserLocationObjectListener, CameraListener, InputListener, TrafficListener  {
@@ -68,6 +79,8 @@ public class YamapView extends MapView implements UserLocationObjectListener, Ca
         put("walk", "#333333");
     }};
     private String userLocationIcon = "";
+    private int userLocationIconWidth = 0;
+    private int userLocationIconHeight = 0;
     private Bitmap userLocationBitmap = null;
 
     private RouteManager routeMng = new RouteManager();
@@ -76,7 +89,72 @@ public class YamapView extends MapView implements UserLocationObjectListener, Ca
     private int userLocationAccuracyStrokeColor = 0;
     private float userLocationAccuracyStrokeWidth = 0.f;
     private List<ReactMapObject> childs = new ArrayList<>();
+    // bounds of the children for viewport and bounds queries
+    private QuadTree<ReactMapObject> childIndex = new QuadTree<>();
     private TrafficLayer trafficLayer = null;
+    private ClusterLayer clusterLayer = null;
+    private int clusterRadius = 60;
+    private int clusterMaxZoom = 16;
+    private int clusterColor = 0;
+    private float lastZoom = -1;
+    private boolean cullingEnabled = false;
+    private float cullingMargin = 0.5f;
+    // visible region with the margin at the last culling pass
+    private BoundingBox cullingBounds = null;
+    // box around the visible region, computed once per camera position instead of
+    // going to MapKit for every icon load and culling pass
+    private BoundingBox visibleBounds = null;
+    private HashSet<ReactMapObject> culledChildren = new HashSet<>();
+    // markers by feature id for batched position updates, kept up to date on add,
+    // remove and nativeID changes
+    private final HashMap<String, YamapMarker> markersById = new HashMap<>();
+    private final HashMap<YamapMarker, String> markerIds = new HashMap<>();
+
+    // camera event stream. Moving events are limited in rate and by the minimum change
+    // since the last sent position, finished events are always sent
+    private int cameraEventInterval = 0;
+    private float cameraEventMinZoomDelta = 0;
+    private float cameraEventMinDistance = 0;
+    private float cameraEventMinAzimuthDelta = 0;
+    private boolean cameraEventsFinishedOnly = false;
+    private CameraPosition lastSentCameraPosition = null;
+    private long lastCameraEventTime = 0;
+    // coalescing key of the moving events, changes after every finished event
+    private short cameraMovement = 0;
+    // only the latest position waits for the next slot
+    private CameraPosition pendingCameraPosition = null;
+    private final Runnable cameraEventFlush = new Runnable() {
+        @Override
+        public void run() {
+            if (pendingCameraPosition != null) {
+                sendCameraPosition(pendingCameraPosition, false);
+            }
+        }
+    };
+
+    // taps on all children go through one listener on the root collection. Children are
+    // found by the user data of their map objects, and everything else under the tap by
+    // native hit tests within tapTolerance (dp)
+    private float tapTolerance = 12;
+    // largest marker icon in pixels so far, taps are searched for that far from the anchors
+    private float markerIconSize = 0;
+    private final MapObjectTapListener featureTapListener = new MapObjectTapListener() {
+        @Override
+        public boolean onMapObjectTap(@NonNull MapObject mapObject, @NonNull Point point) {
+            ReactMapObject feature = findFeature(mapObject);
+            if (feature == null) {
+                return false;
+            }
+            if (!(feature instanceof YamapMarkerCollection)) {
+                View view = (View) feature;
+                Events.dispatch(view, MapObjectPressEvent.obtain(view.getId(), MapObjectPressEvent.EVENT_PRESS, null));
+            }
+            emitFeaturesPress(point, feature);
+            // the tap is consumed so onMapTap does not hit test it again, the map press is sent here
+            Events.dispatch(YamapView.this, MapPointEvent.obtain(getId(), MapPointEvent.EVENT_PRESS, point));
+            return true;
+        }
+    };
 
     // location
     private UserLocationView userLocationView = null;
@@ -86,6 +164,7 @@ public class YamapView extends MapView implements UserLocationObjectListener, Ca
         DirectionsFactory.initialize(context);
         getMap().addCameraListener(this);
         getMap().addInputListener(this);
+        getMap().getMapObjects().addTapListener(featureTapListener);
     }
 
     // ref methods
@@ -98,26 +177,8 @@ public class YamapView extends MapView implements UserLocationObjectListener, Ca
         }
     }
 
-    private WritableMap positionToJSON(CameraPosition position, boolean finished) {
-        WritableMap cameraPosition = Arguments.createMap();
-        Point point = position.getTarget();
-        cameraPosition.putDouble("azimuth", position.getAzimuth());
-        cameraPosition.putDouble("tilt", position.getTilt());
-        cameraPosition.putDouble("zoom", position.getZoom());
-        WritableMap target = Arguments.createMap();
-        target.putDouble("lat", point.getLatitude());
-        target.putDouble("lon", point.getLongitude());
-        cameraPosition.putMap("point", target);
-        cameraPosition.putBoolean("finished", finished);
-        return cameraPosition;
-    }
-
     public void emitCameraPositionToJS(String id) {
-        CameraPosition position = getMap().getCameraPosition();
-        WritableMap cameraPosition = positionToJSON(position, true);
-        cameraPosition.putString("id", id);
-        ReactContext reactContext = (ReactContext) getContext();
-        reactContext.getJSModule(RCTEventEmitter.class).receiveEvent(getId(), "cameraPosition", cameraPosition);
+        Events.dispatch(this, CameraPositionEvent.obtainReceived(getId(), getMap().getCameraPosition(), id));
     }
 
     private WritableMap visibleRegionToJSON(VisibleRegion region) {
@@ -146,12 +207,87 @@ public class YamapView extends MapView implements UserLocationObjectListener, Ca
         return result;
     }
 
+    public WritableMap getCameraPositionJSON() {
+        return CameraPositionEvent.toJSON(getMap().getCameraPosition(), true);
+    }
+
+    public WritableMap getVisibleRegionJSON() {
+        return visibleRegionToJSON(getMap().getVisibleRegion());
+    }
+
     public void emitVisibleRegionToJS(String id) {
-        VisibleRegion visibleRegion = getMap().getVisibleRegion();
-        WritableMap result = visibleRegionToJSON(visibleRegion);
+        WritableMap result = getVisibleRegionJSON();
         result.putString("id", id);
-        ReactContext reactContext = (ReactContext) getContext();
-        reactContext.getJSModule(RCTEventEmitter.class).receiveEvent(getId(), "visibleRegion", result);
+        Events.dispatch(this, MapDataEvent.obtain(getId(), "visibleRegion", result));
+    }
+
+    public boolean isInVisibleRegion(Point point) {
+        if (point == null) {
+            return false;
+        }
+        BoundingBox bounds = getVisibleBounds();
+        return point.getLatitude() >= bounds.getSouthWest().getLatitude() && point.getLatitude() <= bounds.getNorthEast().getLatitude()
+                && point.getLongitude() >= bounds.getSouthWest().getLongitude() && point.getLongitude() <= bounds.getNorthEast().getLongitude();
+    }
+
+    // box around the visible region, which is not a rectangle when the map is rotated or tilted
+    public BoundingBox getVisibleBounds() {
+        if (visibleBounds == null) {
+            visibleBounds = computeVisibleBounds();
+        }
+        return visibleBounds;
+    }
+
+    private BoundingBox computeVisibleBounds() {
+        VisibleRegion region = getMap().getVisibleRegion();
+        Point[] corners = {region.getBottomLeft(), region.getBottomRight(), region.getTopLeft(), region.getTopRight()};
+        double minLat = corners[0].getLatitude();
+        double maxLat = minLat;
+        double minLon = corners[0].getLongitude();
+        double maxLon = minLon;
+        for (Point corner : corners) {
+            minLat = Math.min(minLat, corner.getLatitude());
+            maxLat = Math.max(maxLat, corner.getLatitude());
+            minLon = Math.min(minLon, corner.getLongitude());
+            maxLon = Math.max(maxLon, corner.getLongitude());
+        }
+        return new BoundingBox(new Point(minLat, minLon), new Point(maxLat, maxLon));
+    }
+
+    public List<ReactMapObject> getChildrenInBounds(BoundingBox bounds) {
+        return childIndex.query(bounds.getSouthWest().getLatitude(), bounds.getSouthWest().getLongitude(),
+                bounds.getNorthEast().getLatitude(), bounds.getNorthEast().getLongitude());
+    }
+
+    public void emitFeaturesInVisibleRegionToJS(String id) {
+        emitFeaturesToJS(getFeaturesInBoundsJSON(getVisibleBounds()), id);
+    }
+
+    public void emitFeaturesInBoundsToJS(BoundingBox bounds, String id) {
+        emitFeaturesToJS(getFeaturesInBoundsJSON(bounds), id);
+    }
+
+    // ids of the children intersecting the bounds
+    public WritableArray getFeaturesInBoundsJSON(BoundingBox bounds) {
+        WritableArray ids = Arguments.createArray();
+        for (ReactMapObject feature : getChildrenInBounds(bounds)) {
+            ids.pushString(getFeatureId((View) feature));
+        }
+        return ids;
+    }
+
+    private void emitFeaturesToJS(WritableArray ids, String id) {
+        WritableMap result = Arguments.createMap();
+        result.putArray("ids", ids);
+        result.putString("id", id);
+        Events.dispatch(this, MapDataEvent.obtain(getId(), "features", result));
+    }
+
+    public void emitBatchResultToJS(WritableArray results, String id) {
+        WritableMap result = Arguments.createMap();
+        result.putArray("results", results);
+        result.putString("id", id);
+        Events.dispatch(this, MapDataEvent.obtain(getId(), "batchResult", result));
     }
 
     public void setZoom(Float zoom, float duration, int animation) {
@@ -161,41 +297,37 @@ public class YamapView extends MapView implements UserLocationObjectListener, Ca
     }
 
     public void fitAllMarkers() {
-        ArrayList<Point> lastKnownMarkers = new ArrayList<>();
+        int count = 0;
+        double minLon = 0;
+        double maxLon = 0;
+        double minLat = 0;
+        double maxLat = 0;
         for (int i = 0; i < childs.size(); ++i) {
             ReactMapObject obj = childs.get(i);
-            if (obj instanceof YamapMarker) {
-                YamapMarker marker = (YamapMarker) obj;
-                lastKnownMarkers.add(marker.point);
+            if (!(obj instanceof YamapMarker) || ((YamapMarker) obj).point == null) {
+                continue;
             }
+            Point point = ((YamapMarker) obj).point;
+            if (count == 0) {
+                minLon = maxLon = point.getLongitude();
+                minLat = maxLat = point.getLatitude();
+            } else {
+                minLon = Math.min(minLon, point.getLongitude());
+                maxLon = Math.max(maxLon, point.getLongitude());
+                minLat = Math.min(minLat, point.getLatitude());
+                maxLat = Math.max(maxLat, point.getLatitude());
+            }
+            ++count;
         }
         // todo[0]: добавить параметры анимации и дефолтного зума (для одного маркера)
-        if (lastKnownMarkers.size() == 0) {
+        if (count == 0) {
             return;
         }
-        if (lastKnownMarkers.size() == 1) {
-            Point center = new Point(lastKnownMarkers.get(0).getLatitude(), lastKnownMarkers.get(0).getLongitude());
+        if (count == 1) {
+            Point center = new Point(minLat, minLon);
             getMap().move(new CameraPosition(center, 15, 0, 0));
             return;
         }
-        double minLon = lastKnownMarkers.get(0).getLongitude();
-        double maxLon = lastKnownMarkers.get(0).getLongitude();
-        double minLat = lastKnownMarkers.get(0).getLatitude();
-        double maxLat = lastKnownMarkers.get(0).getLatitude();
-        for (int i = 0; i < lastKnownMarkers.size(); i++) {
-            if (lastKnownMarkers.get(i).getLongitude() > maxLon) {
-                maxLon = lastKnownMarkers.get(i).getLongitude();
-            }
-            if (lastKnownMarkers.get(i).getLongitude() < minLon) {
-                minLon = lastKnownMarkers.get(i).getLongitude();
-            }
-            if (lastKnownMarkers.get(i).getLatitude() > maxLat) {
-                maxLat = lastKnownMarkers.get(i).getLatitude();
-            }
-            if (lastKnownMarkers.get(i).getLatitude() < minLat) {
-                minLat = lastKnownMarkers.get(i).getLatitude();
-            }
-        }
         Point southWest = new Point(minLat, minLon);
         Point northEast = new Point(maxLat, maxLon);
 
@@ -209,10 +341,12 @@ public class YamapView extends MapView implements UserLocationObjectListener, Ca
     public void setUserLocationIcon(final String iconSource) {
         // todo[0]: можно устанавливать разные иконки на покой и движение. Дополнительно можно устанавливать стиль иконки, например scale
         userLocationIcon = iconSource;
-        ImageLoader.DownloadImageBitmap(getContext(), iconSource, new Callback<Bitmap>() {
+        float density = getResources().getDisplayMetrics().density;
+        ImageLoader.DecodeOptions options = new ImageLoader.DecodeOptions(Math.round(userLocationIconWidth * density), Math.round(userLocationIconHeight * density), Bitmap.Config.ARGB_8888);
+        ImageLoader.DownloadImageBitmap(getContext(), iconSource, options, ImageLoader.PRIORITY_HIGH, new Callback<Bitmap>() {
             @Override
             public void invoke(Bitmap bitmap) {
-                if (iconSource.equals(userLocationIcon)) {
+                if (bitmap != null && iconSource.equals(userLocationIcon)) {
                     userLocationBitmap = bitmap;
                     updateUserLocationIcon();
                 }
@@ -220,6 +354,17 @@ public class YamapView extends MapView implements UserLocationObjectListener, Ca
         });
     }
 
+    public void setUserLocationIconSize(int width, int height) {
+        if (width == userLocationIconWidth && height == userLocationIconHeight) {
+            return;
+        }
+        userLocationIconWidth = width;
+        userLocationIconHeight = height;
+        if (!userLocationIcon.equals("")) {
+            setUserLocationIcon(userLocationIcon);
+        }
+    }
+
     public void setUserLocationAccuracyFillColor(int color) {
         userLocationAccuracyFillColor = color;
         updateUserLocationIcon();
@@ -282,6 +427,396 @@ public class YamapView extends MapView implements UserLocationObjectListener, Ca
         }
     }
 
+    public void setClusterMarkers(boolean enabled) {
+        if (enabled && clusterLayer == null) {
+            clusterLayer = new ClusterLayer(this, new ClusterLayer.OnClusterPressListener() {
+                @Override
+                public void onClusterPress(List<YamapMarker> markers, Point point) {
+                    emitClusterPress(markers, point);
+                }
+            });
+            clusterLayer.setRadius(clusterRadius);
+            clusterLayer.setMaxZoom(clusterMaxZoom);
+            if (clusterColor != 0) {
+                clusterLayer.setColor(clusterColor);
+            }
+        } else if (!enabled && clusterLayer != null) {
+            clusterLayer.release();
+            clusterLayer = null;
+        }
+    }
+
+    public void setClusterRadius(int radius) {
+        clusterRadius = radius;
+        if (clusterLayer != null) {
+            clusterLayer.setRadius(radius);
+        }
+    }
+
+    public void setClusterMaxZoom(int maxZoom) {
+        clusterMaxZoom = maxZoom;
+        if (clusterLayer != null) {
+            clusterLayer.setMaxZoom(maxZoom);
+        }
+    }
+
+    public void setClusterColor(int color) {
+        clusterColor = color;
+        if (clusterLayer != null && color != 0) {
+            clusterLayer.setColor(color);
+        }
+    }
+
+    private void emitClusterPress(List<YamapMarker> markers, Point point) {
+        WritableMap data = Arguments.createMap();
+        WritableArray ids = Arguments.createArray();
+        for (YamapMarker marker : markers) {
+            ids.pushString(getFeatureId(marker));
+        }
+        data.putArray("ids", ids);
+        WritableMap target = Arguments.createMap();
+        target.putDouble("lat", point.getLatitude());
+        target.putDouble("lon", point.getLongitude());
+        data.putMap("point", target);
+        Events.dispatch(this, MapDataEvent.obtain(getId(), "onClusterPress", data));
+    }
+
+    public void setCullingEnabled(boolean enabled) {
+        if (enabled == cullingEnabled) {
+            return;
+        }
+        cullingEnabled = enabled;
+        if (enabled) {
+            updateCulling();
+            return;
+        }
+        for (ReactMapObject child : culledChildren) {
+            child.setCulled(false);
+        }
+        culledChildren.clear();
+        cullingBounds = null;
+    }
+
+    // fraction of the visible region size added on every side
+    public void setCullingMargin(float margin) {
+        cullingMargin = Math.max(0, margin);
+        if (cullingEnabled) {
+            updateCulling();
+        }
+    }
+
+    // max moving events per second, 0 sends every camera change
+    public void setCameraEventMaxRate(float rate) {
+        cameraEventInterval = rate > 0 ? Math.round(1000 / rate) : 0;
+    }
+
+    public void setCameraEventMinZoomDelta(float delta) {
+        cameraEventMinZoomDelta = Math.max(0, delta);
+    }
+
+    // meters
+    public void setCameraEventMinDistance(float distance) {
+        cameraEventMinDistance = Math.max(0, distance);
+    }
+
+    // degrees
+    public void setCameraEventMinAzimuthDelta(float delta) {
+        cameraEventMinAzimuthDelta = Math.max(0, delta);
+    }
+
+    public void setCameraEventsFinishedOnly(boolean finishedOnly) {
+        cameraEventsFinishedOnly = finishedOnly;
+        if (finishedOnly) {
+            cancelPendingCameraEvent();
+        }
+    }
+
+    private void emitCameraPositionChanged(CameraPosition position, boolean finished) {
+        if (finished) {
+            cancelPendingCameraEvent();
+            sendCameraPosition(position, true);
+            return;
+        }
+        if (cameraEventsFinishedOnly || !isCameraChangeSignificant(position)) {
+            return;
+        }
+        boolean scheduled = pendingCameraPosition != null;
+        pendingCameraPosition = position;
+        if (scheduled) {
+            return;
+        }
+        long wait = lastCameraEventTime + cameraEventInterval - SystemClock.uptimeMillis();
+        if (wait <= 0) {
+            sendCameraPosition(position, false);
+        } else {
+            postDelayed(cameraEventFlush, wait);
+        }
+    }
+
+    // with no thresholds set every change counts, otherwise any one of them is enough
+    private boolean isCameraChangeSignificant(CameraPosition position) {
+        if (lastSentCameraPosition == null) {
+            return true;
+        }
+        if (cameraEventMinZoomDelta == 0 && cameraEventMinDistance == 0 && cameraEventMinAzimuthDelta == 0) {
+            return true;
+        }
+        CameraPosition last = lastSentCameraPosition;
+        if (cameraEventMinZoomDelta > 0 && Math.abs(position.getZoom() - last.getZoom()) >= cameraEventMinZoomDelta) {
+            return true;
+        }
+        if (cameraEventMinAzimuthDelta > 0) {
+            float delta = Math.abs(position.getAzimuth() - last.getAzimuth()) % 360;
+            if (Math.min(delta, 360 - delta) >= cameraEventMinAzimuthDelta) {
+                return true;
+            }
+        }
+        return cameraEventMinDistance > 0 && Geo.distance(position.getTarget(), last.getTarget()) >= cameraEventMinDistance;
+    }
+
+    private void sendCameraPosition(CameraPosition position, boolean finished) {
+        pendingCameraPosition = null;
+        lastSentCameraPosition = position;
+        lastCameraEventTime = SystemClock.uptimeMillis();
+        Events.dispatch(this, CameraPositionEvent.obtainChanged(getId(), position, finished, cameraMovement));
+        if (finished) {
+            ++cameraMovement;
+        }
+    }
+
+    private void cancelPendingCameraEvent() {
+        if (pendingCameraPosition != null) {
+            removeCallbacks(cameraEventFlush);
+            pendingCameraPosition = null;
+        }
+    }
+
+    public void setTapTolerance(float tolerance) {
+        tapTolerance = Math.max(0, tolerance);
+    }
+
+    // placemarks of marker collections carry item indices, their collection carries the child
+    private ReactMapObject findFeature(MapObject mapObject) {
+        Object data = mapObject.getUserData();
+        if (data instanceof ReactMapObject) {
+            return (ReactMapObject) data;
+        }
+        MapObjectCollection parent = mapObject.getParent();
+        if (parent != null && parent.getUserData() instanceof ReactMapObject) {
+            return (ReactMapObject) parent.getUserData();
+        }
+        return null;
+    }
+
+    // tapTolerance converted to meters at the tap point
+    private double getTapToleranceMeters(Point point) {
+        return tapTolerance * getResources().getDisplayMetrics().density * getMetersPerPixel(point);
+    }
+
+    void onMarkerIconSize(float pixels) {
+        markerIconSize = Math.max(markerIconSize, pixels);
+    }
+
+    // size of a screen pixel at the point for the current camera, 0 if it is off screen
+    double getMetersPerPixel(Point point) {
+        ScreenPoint screenPoint = getMapWindow().worldToScreen(point);
+        if (screenPoint == null) {
+            return 0;
+        }
+        Point edge = getMapWindow().screenToWorld(new ScreenPoint(screenPoint.getX() + 1, screenPoint.getY()));
+        if (edge == null) {
+            return 0;
+        }
+        return GeometryUtils.distance(point.getLatitude(), point.getLongitude(), edge.getLatitude(), edge.getLongitude());
+    }
+
+    // children under the tap, the one the map reported first. Candidates come from the
+    // child index, only they are tested against their geometry. For marker collections
+    // the item lookup is the hit test, so it runs once per tap
+    private void emitFeaturesPress(Point point, @Nullable ReactMapObject tapped) {
+        double tolerance = getTapToleranceMeters(point);
+        WritableArray features = Arguments.createArray();
+        if (tapped != null) {
+            features.pushMap(featureToJSON(tapped, tapped instanceof YamapMarkerCollection
+                    ? ((YamapMarkerCollection) tapped).getItemIdsAt(point, tolerance) : null));
+        }
+        // markers are indexed by their anchor, a tap can be up to an icon size away from it
+        double radius = tolerance + markerIconSize * getMetersPerPixel(point);
+        for (ReactMapObject child : getChildrenInBounds(GeometryUtils.boundsOf(point, radius))) {
+            if (child == tapped || !child.isShownOnMap()) {
+                continue;
+            }
+            if (child instanceof YamapMarkerCollection) {
+                List<String> itemIds = ((YamapMarkerCollection) child).getItemIdsAt(point, tolerance);
+                if (!itemIds.isEmpty()) {
+                    features.pushMap(featureToJSON(child, itemIds));
+                }
+            } else if (child.hitTest(point, tolerance)) {
+                features.pushMap(featureToJSON(child, null));
+            }
+        }
+        if (features.size() == 0) {
+            return;
+        }
+        WritableMap data = Arguments.createMap();
+        data.putArray("features", features);
+        WritableMap target = Arguments.createMap();
+        target.putDouble("lat", point.getLatitude());
+        target.putDouble("lon", point.getLongitude());
+        data.putMap("point", target);
+        Events.dispatch(this, MapDataEvent.obtain(getId(), "onFeaturesPress", data));
+    }
+
+    private static WritableMap featureToJSON(ReactMapObject feature, @Nullable List<String> itemIds) {
+        WritableMap item = Arguments.createMap();
+        item.putString("id", getFeatureId((View) feature));
+        item.putString("type", getFeatureType(feature));
+        if (itemIds != null) {
+            WritableArray items = Arguments.createArray();
+            for (String itemId : itemIds) {
+                items.pushString(itemId);
+            }
+            item.putArray("items", items);
+        }
+        return item;
+    }
+
+    private static String getFeatureType(ReactMapObject feature) {
+        if (feature instanceof YamapMarker) {
+            return "marker";
+        } else if (feature instanceof YamapPolyline) {
+            return "polyline";
+        } else if (feature instanceof YamapPolygon) {
+            return "polygon";
+        } else if (feature instanceof YamapCircle) {
+            return "circle";
+        }
+        return "markerCollection";
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        visibleBounds = null;
+    }
+
+    // children outside the visible region plus the margin are hidden, evaluated when the camera stops
+    private void updateCulling() {
+        if (getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        cullingBounds = GeometryUtils.expand(getVisibleBounds(), cullingMargin);
+        HashSet<ReactMapObject> inside = new HashSet<>(getChildrenInBounds(cullingBounds));
+        HashSet<ReactMapObject> nextCulled = new HashSet<>();
+        for (ReactMapObject child : childs) {
+            // children without geometry are not indexed and never culled
+            if (!inside.contains(child) && childIndex.contains(child)) {
+                nextCulled.add(child);
+            }
+        }
+        for (ReactMapObject child : culledChildren) {
+            if (!nextCulled.contains(child)) {
+                child.setCulled(false);
+            }
+        }
+        for (ReactMapObject child : nextCulled) {
+            child.setCulled(true);
+        }
+        culledChildren = nextCulled;
+    }
+
+    private void updateChildCulling(ReactMapObject child) {
+        if (!cullingEnabled || cullingBounds == null) {
+            return;
+        }
+        BoundingBox bounds = child.getBounds();
+        boolean culled = bounds != null && !GeometryUtils.intersects(bounds, cullingBounds);
+        child.setCulled(culled);
+        if (culled) {
+            culledChildren.add(child);
+        } else {
+            culledChildren.remove(child);
+        }
+    }
+
+    // moves many markers in one pass: ids[i] goes to coordinates[2i], coordinates[2i + 1].
+    // With a duration the markers are animated instead, a superseded animation commits
+    // the position it has reached, so the index settles even when updates come faster
+    // than the duration
+    public void updateMarkerPositions(String[] ids, double[] coordinates, int duration) {
+        int count = Math.min(ids.length, coordinates.length / 2);
+        for (int i = 0; i < count; ++i) {
+            YamapMarker marker = markersById.get(ids[i]);
+            if (marker == null) {
+                continue;
+            }
+            Point point = new Point(coordinates[i * 2], coordinates[i * 2 + 1]);
+            if (duration > 0) {
+                marker.animateTo(point, duration, null, null);
+            } else {
+                marker.moveTo(point);
+                onChildGeometryChanged(marker);
+            }
+        }
+    }
+
+    private void putMarkerId(YamapMarker marker) {
+        removeMarkerId(marker);
+        String id = getFeatureId(marker);
+        markersById.put(id, marker);
+        markerIds.put(marker, id);
+    }
+
+    private void removeMarkerId(YamapMarker marker) {
+        String id = markerIds.remove(marker);
+        if (id != null && markersById.get(id) == marker) {
+            markersById.remove(id);
+        }
+    }
+
+    void onMarkerIdChanged(YamapMarker marker) {
+        if (markerIds.containsKey(marker)) {
+            putMarkerId(marker);
+        }
+    }
+
+    // nativeID of a child, or its react tag if none was given
+    static String getFeatureId(View child) {
+        String nativeId = ReactFindViewUtil.getNativeId(child);
+        return nativeId != null ? nativeId : String.valueOf(child.getId());
+    }
+
+    List<YamapMarker> getMarkers() {
+        ArrayList<YamapMarker> markers = new ArrayList<>();
+        for (ReactMapObject child : childs) {
+            if (child instanceof YamapMarker) {
+                markers.add((YamapMarker) child);
+            }
+        }
+        return markers;
+    }
+
+    void onChildGeometryChanged(ReactMapObject child) {
+        if (((View) child).getParent() == this) {
+            indexChild(child);
+            updateChildCulling(child);
+        }
+        if (clusterLayer != null && child instanceof YamapMarker) {
+            clusterLayer.invalidate();
+        }
+    }
+
+    private void indexChild(ReactMapObject child) {
+        BoundingBox bounds = child.getBounds();
+        if (bounds == null) {
+            childIndex.remove(child);
+            culledChildren.remove(child);
+            return;
+        }
+        childIndex.put(child, bounds.getSouthWest().getLatitude(), bounds.getSouthWest().getLongitude(),
+                bounds.getNorthEast().getLatitude(), bounds.getNorthEast().getLongitude());
+    }
+
     private boolean transportHasStyle(Transport transport) {
         return transport.getLine().getStyle() != null;
     }
@@ -292,33 +827,75 @@ public class YamapView extends MapView implements UserLocationObjectListener, Ca
 
     // children
     public void addFeature(View child, int index) {
+        if (child instanceof ReactMapObject) {
+            ((ReactMapObject) child).onCameraZoomChanged(getMap().getCameraPosition().getZoom());
+        }
         if (child instanceof YamapPolygon) {
             YamapPolygon _child = (YamapPolygon) child;
             PolygonMapObject obj = getMap().getMapObjects().addPolygon(_child.polygon);
+            obj.setUserData(_child);
             _child.setMapObject(obj);
             childs.add(_child);
         } else if (child instanceof YamapPolyline) {
             YamapPolyline _child = (YamapPolyline) child;
-            PolylineMapObject obj = getMap().getMapObjects().addPolyline(_child.polyline);
+            PolylineMapObject obj = getMap().getMapObjects().addPolyline(_child.getPolyline());
+            obj.setUserData(_child);
             _child.setMapObject(obj);
             childs.add(_child);
         } else if (child instanceof YamapMarker) {
             YamapMarker _child = (YamapMarker) child;
+            _child.setMapView(this);
             PlacemarkMapObject obj = getMap().getMapObjects().addPlacemark(_child.point);
+            obj.setUserData(_child);
             _child.setMapObject(obj);
             childs.add(_child);
+            putMarkerId(_child);
+            if (clusterLayer != null) {
+                clusterLayer.onMarkerAdded(_child);
+            }
         } else if (child instanceof YamapCircle) {
             YamapCircle _child = (YamapCircle) child;
             CircleMapObject obj = getMap().getMapObjects().addCircle(_child.circle, 0, 0.f, 0);
+            obj.setUserData(_child);
+            _child.setMapObject(obj);
+            childs.add(_child);
+        } else if (child instanceof YamapMarkerCollection) {
+            YamapMarkerCollection _child = (YamapMarkerCollection) child;
+            MapObjectCollection obj = getMap().getMapObjects().addCollection();
+            obj.setUserData(_child);
             _child.setMapObject(obj);
             childs.add(_child);
         }
+        if (child instanceof ReactMapObject) {
+            indexChild((ReactMapObject) child);
+            updateChildCulling((ReactMapObject) child);
+        }
     }
 
     public void removeChild(int index) {
         if (index < childs.size()) {
             ReactMapObject child = childs.remove(index);
+            if (child instanceof YamapMarker) {
+                // a running animation commits its position when cancelled, before the index entry is dropped
+                ((YamapMarker) child).cancelAnimation();
+            }
+            childIndex.remove(child);
+            culledChildren.remove(child);
+            // removed from the map first, so pooled bitmaps are no longer shown anywhere
             getMap().getMapObjects().remove(child.getMapObject());
+            if (child instanceof YamapMarker) {
+                removeMarkerId((YamapMarker) child);
+                ((YamapMarker) child).cancelIconLoad();
+                ((YamapMarker) child).releaseChildSnapshot(true);
+                ((YamapMarker) child).releaseIcon();
+                if (clusterLayer != null) {
+                    clusterLayer.onMarkerRemoved((YamapMarker) child);
+                }
+            } else if (child instanceof YamapPolyline) {
+                ((YamapPolyline) child).releaseProgress();
+            } else if (child instanceof YamapMarkerCollection) {
+                ((YamapMarkerCollection) child).releaseIcons();
+            }
         }
     }
 
@@ -360,27 +937,33 @@ public class YamapView extends MapView implements UserLocationObjectListener, Ca
 
     @Override
     public void onCameraPositionChanged(@NonNull com.yandex.mapkit.map.Map map, @NonNull CameraPosition cameraPosition, @NonNull CameraUpdateReason cameraUpdateReason, boolean finished) {
-        WritableMap position = positionToJSON(cameraPosition, finished);
-        ReactContext reactContext = (ReactContext) getContext();
-        reactContext.getJSModule(RCTEventEmitter.class).receiveEvent(getId(), "cameraPositionChanged", position);
+        visibleBounds = null;
+        if (clusterLayer != null) {
+            clusterLayer.update(cameraPosition, finished);
+        }
+        if (finished && cullingEnabled) {
+            updateCulling();
+        }
+        // zoom ranges are applied natively, without a round trip through JS
+        if (cameraPosition.getZoom() != lastZoom) {
+            lastZoom = cameraPosition.getZoom();
+            for (ReactMapObject child : childs) {
+                child.onCameraZoomChanged(lastZoom);
+            }
+        }
+        emitCameraPositionChanged(cameraPosition, finished);
     }
 
     @Override
     public void onMapTap(@NonNull com.yandex.mapkit.map.Map map, @NonNull Point point) {
-        WritableMap data = Arguments.createMap();
-        data.putDouble("lat", point.getLatitude());
-        data.putDouble("lon", point.getLongitude());
-        ReactContext reactContext = (ReactContext) getContext();
-        reactContext.getJSModule(RCTEventEmitter.class).receiveEvent(getId(), "onMapPress", data);
+        // thin lines and small objects can be missed by the map but still be within the tolerance
+        emitFeaturesPress(point, null);
+        Events.dispatch(this, MapPointEvent.obtain(getId(), MapPointEvent.EVENT_PRESS, point));
     }
 
     @Override
     public void onMapLongTap(@NonNull com.yandex.mapkit.map.Map map, @NonNull Point point) {
-        WritableMap data = Arguments.createMap();
-        data.putDouble("lat", point.getLatitude());
-        data.putDouble("lon", point.getLongitude());
-        ReactContext reactContext = (ReactContext) getContext();
-        reactContext.getJSModule(RCTEventEmitter.class).receiveEvent(getId(), "onMapLongPress", data);
+        Events.dispatch(this, MapPointEvent.obtain(getId(), MapPointEvent.EVENT_LONG_PRESS, point));
     }
 
     //trafficListener implementation
@@ -8,7 +8,10 @@ export interface CircleProps {
   strokeColor?: string;
   strokeWidth?: number;
   zIndex?: number;
+  minZoom?: number;
+  maxZoom?: number;
   onPress?: () => void;
+  nativeID?: string;
   center: Point;
   radius: number;
   children?: undefined;
@@ -1,17 +1,24 @@
 import React from 'react';
-import { requireNativeComponent, Platform, ImageSourcePropType } from 'react-native';
+import { requireNativeComponent, Platform, ImageSourcePropType, UIManager, findNodeHandle } from 'react-native';
 // @ts-ignore
 import resolveAssetSource from 'react-native/Libraries/Image/resolveAssetSource';
 import { Point } from '../interfaces';
 
+export type MarkerEasing = 'linear' | 'easeIn' | 'easeOut' | 'easeInOut';
+
 export interface MarkerProps {
   children?: React.ReactElement;
   zIndex?: number;
+  minZoom?: number;
+  maxZoom?: number;
   scale?: number;
   onPress?: () => void;
+  nativeID?: string;
   point: Point;
   source?: ImageSourcePropType;
   anchor?: { x: number, y: number };
+  iconSize?: { width?: number, height?: number };
+  iconBitmapConfig?: 'ARGB_8888' | 'RGB_565';
 }
 
 const NativeMarkerComponent = requireNativeComponent<MarkerProps & { pointerEvents: 'none' }>('YamapMarker');
@@ -43,6 +50,15 @@ export class Marker extends React.Component<MarkerProps, State> {
     };
   }
 
+  // android only, moves the marker natively without sending a point every frame
+  public animateTo(point: Point, duration: number, easing: MarkerEasing = 'linear', heading?: number) {
+    UIManager.dispatchViewManagerCommand(
+      findNodeHandle(this),
+      'animateTo' as any,
+      [point, duration, easing, heading === undefined ? null : heading],
+    );
+  }
+
   private resolveImageUri(img?: ImageSourcePropType) {
     return img ? resolveAssetSource(img).uri : '';
   }
@@ -0,0 +1,34 @@
+import React from 'react';
+import { requireNativeComponent, ImageSourcePropType, NativeSyntheticEvent } from 'react-native';
+// @ts-ignore
+import resolveAssetSource from 'react-native/Libraries/Image/resolveAssetSource';
+
+export interface MarkerCollectionProps {
+  coordinates: number[];
+  ids: string[];
+  iconIndices?: number[];
+  icons: ImageSourcePropType[];
+  zIndex?: number;
+  minZoom?: number;
+  maxZoom?: number;
+  scale?: number;
+  anchor?: { x: number, y: number };
+  onItemPress?: (event: NativeSyntheticEvent<{ id: string }>) => void;
+  children?: undefined;
+}
+
+const NativeMarkerCollectionComponent = requireNativeComponent<Omit<MarkerCollectionProps, 'icons'> & { icons: string[] }>('YamapMarkerCollection');
+
+export class MarkerCollection extends React.Component<MarkerCollectionProps> {
+  private resolveImageUri(img?: ImageSourcePropType) {
+    return img ? resolveAssetSource(img).uri : '';
+  }
+
+  render() {
+    const props = {
+      ...this.props,
+      icons: this.props.icons.map((icon) => this.resolveImageUri(icon)),
+    };
+    return <NativeMarkerCollectionComponent {...props} />;
+  }
+}
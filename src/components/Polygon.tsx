@@ -8,8 +8,13 @@ export interface PolygonProps {
   strokeColor?: string;
   strokeWidth?: number;
   zIndex?: number;
+  minZoom?: number;
+  maxZoom?: number;
   onPress?: () => void;
-  points: Point[];
+  nativeID?: string;
+  points?: Point[];
+  coordinates?: number[];
+  encodedPoints?: string;
   innerRings?: (Point[])[];
   children?: undefined;
 }
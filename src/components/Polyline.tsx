@@ -1,5 +1,5 @@
 import React from 'react';
-import { requireNativeComponent } from 'react-native';
+import { requireNativeComponent, UIManager, findNodeHandle } from 'react-native';
 import { processColorProps } from '../utils';
 import { Point } from '../interfaces';
 
@@ -12,19 +12,76 @@ export interface PolylineProps {
   dashOffset?: number;
   gapLength?: number;
   zIndex?: number;
+  minZoom?: number;
+  maxZoom?: number;
+  simplificationTolerance?: number;
+  travelledStrokeColor?: string;
   onPress?: () => void;
-  points: Point[];
+  nativeID?: string;
+  points?: Point[];
+  coordinates?: number[];
+  encodedPoints?: string;
   children?: undefined;
 }
 
 const NativePolylineComponent = requireNativeComponent<PolylineProps>('YamapPolyline');
 
 export class Polyline extends React.Component<PolylineProps> {
+  // android only, adds points to the end of the line. With maxPoints > 0 the oldest points above the limit are dropped
+  public appendPoints(points: Point[], maxPoints: number = 0) {
+    const coordinates: number[] = [];
+    for (const point of points) {
+      coordinates.push(point.lat, point.lon);
+    }
+    UIManager.dispatchViewManagerCommand(
+      findNodeHandle(this),
+      'appendPoints' as any,
+      [coordinates, maxPoints],
+    );
+  }
+
+  // android only, removes count points from the start of the line
+  public trimPoints(count: number) {
+    UIManager.dispatchViewManagerCommand(
+      findNodeHandle(this),
+      'trimPoints' as any,
+      [count],
+    );
+  }
+
+  // android only, splits the line at the point projected onto the nearest segment
+  public setProgressPosition(point: Point) {
+    UIManager.dispatchViewManagerCommand(
+      findNodeHandle(this),
+      'setProgressPosition' as any,
+      [point],
+    );
+  }
+
+  // android only, distance in meters from the start of the line
+  public setProgressDistance(distance: number) {
+    UIManager.dispatchViewManagerCommand(
+      findNodeHandle(this),
+      'setProgressDistance' as any,
+      [distance],
+    );
+  }
+
+  // android only
+  public clearProgress() {
+    UIManager.dispatchViewManagerCommand(
+      findNodeHandle(this),
+      'clearProgress' as any,
+      [],
+    );
+  }
+
   render() {
     const props = { ...this.props };
     processColorProps(props, 'fillColor' as keyof PolylineProps);
     processColorProps(props, 'strokeColor' as keyof PolylineProps);
     processColorProps(props, 'outlineColor' as keyof PolylineProps);
+    processColorProps(props, 'travelledStrokeColor' as keyof PolylineProps);
     return <NativePolylineComponent {...props} />;
   }
 }
@@ -11,13 +11,14 @@ import {
 // @ts-ignore
 import resolveAssetSource from 'react-native/Libraries/Image/resolveAssetSource';
 import CallbacksManager from '../utils/CallbacksManager';
-import { Animation, Point, DrivingInfo, MasstransitInfo, RoutesFoundEvent, Vehicles, CameraPosition, VisibleRegion } from '../interfaces';
+import { Animation, Point, DrivingInfo, MasstransitInfo, RoutesFoundEvent, Vehicles, CameraPosition, VisibleRegion, ClusterPressEvent, FeaturesPressEvent, UpdateStats, BatchOperation, MapQuery } from '../interfaces';
 import { processColorProps } from '../utils';
 
 const { yamap: NativeYamapModule } = NativeModules;
 
 export interface YaMapProps extends ViewProps {
   userLocationIcon?: ImageSourcePropType;
+  userLocationIconSize?: { width?: number, height?: number };
   showUserPosition?: boolean;
   nightMode?: boolean;
   mapStyle?: string;
@@ -31,6 +32,20 @@ export interface YaMapProps extends ViewProps {
   zoomGesturesEnabled?: boolean;
   tiltGesturesEnabled?: boolean;
   rotateGesturesEnabled?: boolean;
+  clusterMarkers?: boolean;
+  clusterRadius?: number;
+  clusterMaxZoom?: number;
+  clusterColor?: string;
+  cullingEnabled?: boolean;
+  cullingMargin?: number;
+  cameraEventMaxRate?: number;
+  cameraEventMinZoomDelta?: number;
+  cameraEventMinDistance?: number;
+  cameraEventMinAzimuthDelta?: number;
+  cameraEventsFinishedOnly?: boolean;
+  onClusterPress?: (event: NativeSyntheticEvent<ClusterPressEvent>) => void;
+  tapTolerance?: number;
+  onFeaturesPress?: (event: NativeSyntheticEvent<FeaturesPressEvent>) => void;
 }
 
 const YaMapNativeComponent = requireNativeComponent<YaMapProps>('YamapView');
@@ -77,6 +92,28 @@ export class YaMap extends React.Component<YaMapProps> {
     });
   }
 
+  public static setMaxConcurrentImageLoads(count: number) {
+    if (Platform.OS === 'android') {
+      NativeYamapModule.setMaxConcurrentImageLoads(count);
+    }
+  }
+
+  // android only
+  public static getUpdateStats(): Promise<UpdateStats> {
+    if (Platform.OS !== 'android') {
+      return Promise.resolve({ applied: 0, propsSkipped: 0, geometrySkipped: 0 });
+    }
+    return new Promise((resolve, reject) => {
+      NativeYamapModule.getUpdateStats((stats: UpdateStats) => resolve(stats), (err: string) => reject(new Error(err)));
+    });
+  }
+
+  public static resetUpdateStats() {
+    if (Platform.OS === 'android') {
+      NativeYamapModule.resetUpdateStats();
+    }
+  }
+
   public findRoutes(points: Point[], vehicles: Vehicles[], callback: (event: RoutesFoundEvent<DrivingInfo | MasstransitInfo>) => void) {
     this._findRoutes(points, vehicles, callback);
   }
@@ -125,24 +162,109 @@ export class YaMap extends React.Component<YaMapProps> {
     );
   }
 
-  public getCameraPosition(callback: (position: CameraPosition) => void) {
-    const cbId = CallbacksManager.addCallback(callback);
+  // on android the position is resolved by the native module directly, without a reply event
+  public getCameraPosition(callback?: (position: CameraPosition) => void): Promise<CameraPosition> {
+    if (Platform.OS === 'android') {
+      const promise: Promise<CameraPosition> = NativeYamapModule.getCameraPosition(findNodeHandle(this));
+      if (callback) {
+        promise.then(callback);
+      }
+      return promise;
+    }
+    return new Promise((resolve) => {
+      const cbId = CallbacksManager.addCallback((position: CameraPosition) => {
+        callback && callback(position);
+        resolve(position);
+      });
+      UIManager.dispatchViewManagerCommand(
+        findNodeHandle(this),
+        this.getCommand('getCameraPosition'),
+        [cbId],
+      );
+    });
+  }
+
+  public getVisibleRegion(callback?: (VisibleRegion: VisibleRegion) => void): Promise<VisibleRegion> {
+    if (Platform.OS === 'android') {
+      const promise: Promise<VisibleRegion> = NativeYamapModule.getVisibleRegion(findNodeHandle(this));
+      if (callback) {
+        promise.then(callback);
+      }
+      return promise;
+    }
+    return new Promise((resolve) => {
+      const callbackId = CallbacksManager.addCallback((region: VisibleRegion) => {
+        callback && callback(region);
+        resolve(region);
+      });
+      UIManager.dispatchViewManagerCommand(
+        findNodeHandle(this),
+        this.getCommand('getVisibleRegion'),
+        [callbackId]
+      )
+    });
+  }
+
+  // android only, several queries against the same camera state in one call
+  public query(queries: MapQuery[]): Promise<any[]> {
+    return NativeYamapModule.query(findNodeHandle(this), queries);
+  }
+
+  public getFeaturesInVisibleRegion(callback: (ids: string[]) => void) {
+    const callbackId = CallbacksManager.addCallback(callback);
     UIManager.dispatchViewManagerCommand(
       findNodeHandle(this),
-      this.getCommand('getCameraPosition'),
-      [cbId],
-    );
+      this.getCommand('getFeaturesInVisibleRegion'),
+      [callbackId]
+    )
   }
 
-  public getVisibleRegion(callback: (VisibleRegion: VisibleRegion) => void) {
+  public getFeaturesInBounds(southWest: Point, northEast: Point, callback: (ids: string[]) => void) {
     const callbackId = CallbacksManager.addCallback(callback);
     UIManager.dispatchViewManagerCommand(
       findNodeHandle(this),
-      this.getCommand('getVisibleRegion'),
-      [callbackId]
+      this.getCommand('getFeaturesInBounds'),
+      [southWest, northEast, callbackId]
     )
   }
 
+  // android only, coordinates are [lat0, lon0, lat1, lon1, ...] in the order of ids (marker nativeID)
+  public updateMarkerPositions(ids: string[], coordinates: number[], duration: number = 0) {
+    UIManager.dispatchViewManagerCommand(
+      findNodeHandle(this),
+      this.getCommand('updateMarkerPositions'),
+      [ids, coordinates, duration]
+    )
+  }
+
+  // android only, runs the operations in order in one native pass. The callback gets one result
+  // per operation: the value for get* operations and null for the others
+  public batch(operations: BatchOperation[], callback?: (results: any[]) => void) {
+    const callbackId = CallbacksManager.addCallback(callback || (() => {}));
+    UIManager.dispatchViewManagerCommand(
+      findNodeHandle(this),
+      this.getCommand('batch'),
+      [operations.map(YaMap.toBatchArgs), callbackId]
+    )
+  }
+
+  private static toBatchArgs(operation: BatchOperation) {
+    switch (operation.type) {
+      case 'setCenter':
+        return { type: operation.type, args: [operation.center, operation.zoom ?? 10, operation.azimuth ?? 0, operation.tilt ?? 0, operation.duration ?? 0, operation.animation ?? Animation.SMOOTH] };
+      case 'setZoom':
+        return { type: operation.type, args: [operation.zoom, operation.duration ?? 0, operation.animation ?? Animation.SMOOTH] };
+      case 'setTrafficVisible':
+        return { type: operation.type, args: [operation.isVisible] };
+      case 'setMapStyle':
+        return { type: operation.type, args: [operation.style] };
+      case 'getFeaturesInBounds':
+        return { type: operation.type, args: [operation.southWest, operation.northEast] };
+      default:
+        return { type: operation.type, args: [] };
+    }
+  }
+
   private _findRoutes(points: Point[], vehicles: Vehicles[], callback: ((event: RoutesFoundEvent<DrivingInfo | MasstransitInfo>) => void) | ((event: RoutesFoundEvent<DrivingInfo>) => void) | ((event: RoutesFoundEvent<MasstransitInfo>) => void)) {
     const cbId = CallbacksManager.addCallback(callback);
     const args
@@ -178,6 +300,16 @@ export class YaMap extends React.Component<YaMapProps> {
     CallbacksManager.call(id, visibleRegion);
   }
 
+  private processBatchResult(event: NativeSyntheticEvent<{id: string, results: any[]}>) {
+    const {id, results} = event.nativeEvent;
+    CallbacksManager.call(id, results);
+  }
+
+  private processFeatures(event: NativeSyntheticEvent<{id: string, ids: string[]}>) {
+    const {id, ids} = event.nativeEvent;
+    CallbacksManager.call(id, ids);
+  }
+
   private resolveImageUri(img: ImageSourcePropType) {
     return img ? resolveAssetSource(img).uri : '';
   }
@@ -187,10 +319,13 @@ export class YaMap extends React.Component<YaMapProps> {
       ...this.props,
       onCameraPositionReceived: this.processCameraPosition,
       onVisibleRegionReceived: this.processVisibleRegion,
+      onFeaturesReceived: this.processFeatures,
+      onBatchResultReceived: this.processBatchResult,
       userLocationIcon: this.props.userLocationIcon ? this.resolveImageUri(this.props.userLocationIcon) : undefined,
     };
     processColorProps(props, 'userLocationAccuracyFillColor' as keyof YaMapProps);
     processColorProps(props, 'userLocationAccuracyStrokeColor' as keyof YaMapProps);
+    processColorProps(props, 'clusterColor' as keyof YaMapProps);
     return props;
   }
 
@@ -1,5 +1,6 @@
 export * from './components/Yamap';
 export * from './components/Marker';
+export * from './components/MarkerCollection';
 export * from './components/Polygon';
 export * from './components/Polyline';
 export * from './components/Circle';
@@ -60,3 +60,38 @@ export type VisibleRegion = {
   topLeft: Point;
   topRight: Point;
 }
+
+export interface ClusterPressEvent {
+  ids: string[];
+  point: Point;
+}
+
+export interface PressedFeature {
+  id: string;
+  type: 'marker' | 'polyline' | 'polygon' | 'circle' | 'markerCollection';
+  items?: string[];
+}
+
+export interface FeaturesPressEvent {
+  features: PressedFeature[];
+  point: Point;
+}
+
+export type MapQuery = 'cameraPosition' | 'visibleRegion' | 'featuresInVisibleRegion';
+
+export type BatchOperation =
+  | { type: 'setCenter', center: Point, zoom?: number, azimuth?: number, tilt?: number, duration?: number, animation?: Animation }
+  | { type: 'setZoom', zoom: number, duration?: number, animation?: Animation }
+  | { type: 'fitAllMarkers' }
+  | { type: 'setTrafficVisible', isVisible: boolean }
+  | { type: 'setMapStyle', style: string }
+  | { type: 'getCameraPosition' }
+  | { type: 'getVisibleRegion' }
+  | { type: 'getFeaturesInVisibleRegion' }
+  | { type: 'getFeaturesInBounds', southWest: Point, northEast: Point };
+
+export interface UpdateStats {
+  applied: number;
+  propsSkipped: number;
+  geometrySkipped: number;
+}